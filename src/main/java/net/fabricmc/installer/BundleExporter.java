@@ -0,0 +1,115 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+import mjson.Json;
+
+import net.fabricmc.installer.client.ClientInstaller;
+import net.fabricmc.installer.server.MinecraftServerDownloader;
+import net.fabricmc.installer.server.ServerInstaller;
+import net.fabricmc.installer.util.ArgumentParser;
+import net.fabricmc.installer.util.DownloadExecutor;
+import net.fabricmc.installer.util.InstallBundle;
+import net.fabricmc.installer.util.InstallerProgress;
+import net.fabricmc.installer.util.Library;
+import net.fabricmc.installer.util.NotebookService;
+import net.fabricmc.installer.util.Reference;
+import net.fabricmc.installer.util.Utils;
+
+/**
+ * Resolves and downloads everything a client or server install needs and writes it into an {@link InstallBundle},
+ * which the client and server commands install from with -frombundle.
+ */
+public final class BundleExporter {
+	public static final String CLI_HELP = "-side [client, server] -mcversion <minecraft version, default latest> -loader <loader version, default latest> -output <bundle file> -nominecraft";
+
+	public static void export(ArgumentParser args) throws IOException {
+		String side = args.getOrDefault("side", () -> "server").toLowerCase(Locale.ROOT);
+
+		if (!side.equals("client") && !side.equals("server")) {
+			throw new IllegalArgumentException("Unknown side " + side + ", expected client or server");
+		}
+
+		String gameVersion = args.getOrDefault("mcversion", () -> Main.GAME_VERSION_META.getLatestVersion(args.has("snapshot")).getVersion());
+		String loaderVersion = args.getOrDefault("loader", () -> Main.LOADER_META.getLatestVersion(false).getVersion());
+		Path output = Paths.get(args.getOrDefault("output", () -> String.format("%s-%s-%s-%s.zip", Reference.LOADER_NAME, side, loaderVersion, gameVersion)));
+		boolean includeServer = side.equals("server") && !args.has("nominecraft");
+
+		export(output, side, loaderVersion, gameVersion, includeServer, InstallerProgress.CONSOLE);
+		InstallerProgress.CONSOLE.updateProgress("Wrote install bundle " + output.toAbsolutePath());
+	}
+
+	public static void export(Path output, String side, String loaderVersion, String gameVersion, boolean includeServer, InstallerProgress progress) throws IOException {
+		String metaPath = side.equals("client") ? ClientInstaller.getProfileMetaPath(loaderVersion, gameVersion) : ServerInstaller.getProfileMetaPath(loaderVersion, gameVersion);
+		Json profile = NotebookService.queryMetaJson(metaPath);
+		List<Library> libraries = new ArrayList<>();
+
+		for (Json libraryJson : profile.at("libraries").asJsonList()) {
+			libraries.add(new Library(libraryJson));
+		}
+
+		Path tmpDir = Files.createTempDirectory("notebook-bundle");
+
+		try (InstallBundle.Writer writer = InstallBundle.create(output, side, loaderVersion, gameVersion)) {
+			writer.add(InstallBundle.getMetaEntry(metaPath), profile.toString().getBytes(StandardCharsets.UTF_8));
+
+			progress.updateProgress(Utils.BUNDLE.getString("progress.download.libraries"));
+			Path libsDir = tmpDir.resolve("libraries");
+			DownloadExecutor.downloadLibraries(libraries, libsDir, progress);
+
+			for (Library library : libraries) {
+				writer.add(InstallBundle.getLibraryEntry(library), libsDir.resolve(library.getPath()));
+			}
+
+			if (includeServer) {
+				progress.updateProgress(Utils.BUNDLE.getString("progress.download.minecraft"));
+				Path serverJar = tmpDir.resolve("server.jar");
+				new MinecraftServerDownloader(gameVersion).downloadMinecraftServer(serverJar);
+				writer.add(InstallBundle.getServerEntry(gameVersion), serverJar);
+			}
+
+			writer.finish();
+		} finally {
+			try (Stream<Path> stream = Files.walk(tmpDir)) {
+				for (Path path : (Iterable<Path>) stream.sorted(Comparator.reverseOrder())::iterator) {
+					Files.deleteIfExists(path);
+				}
+			}
+		}
+	}
+
+	private BundleExporter() { }
+}
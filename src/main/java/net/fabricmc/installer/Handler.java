@@ -36,6 +36,10 @@ import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.text.MessageFormat;
+import java.util.List;
 import java.util.Locale;
 
 import javax.swing.Box;
@@ -48,21 +52,49 @@ import javax.swing.JFileChooser;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 import javax.swing.border.EmptyBorder;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
 import net.fabricmc.installer.util.ArgumentParser;
+import net.fabricmc.installer.util.InstallBundle;
+import net.fabricmc.installer.util.InstallLock;
+import net.fabricmc.installer.util.InstallPrefetch;
 import net.fabricmc.installer.util.InstallerProgress;
 import net.fabricmc.installer.util.MetaHandler;
+import net.fabricmc.installer.util.ProgressAggregator;
 import net.fabricmc.installer.util.Utils;
 
 public abstract class Handler implements InstallerProgress {
 	protected static final int HORIZONTAL_SPACING = 4;
 	protected static final int VERTICAL_SPACING = 6;
 
+	/**
+	 * Options read by {@link Main} before any command runs.
+	 */
+	public static final String DOWNLOAD_CLI_HELP = "-threads <parallel downloads, default 8>"
+			+ " -segments <connections per large file, default 4>"
+			+ " -retries <retries per request, default 3>"
+			+ " -httptimeout <seconds, default 8>"
+			+ " -legacyhttp"
+			+ " -hedge <latency percentile to query the next mirror after, default off>"
+			+ " -maxbandwidth <KiB/s, default unlimited>"
+			+ " -maxconnections <per host, default 4>"
+			+ " -minspeed <KiB/s to abort slower connections at, default 10, 0 disables>"
+			+ " -stallwindow <seconds below -minspeed, default 15>"
+			+ " -forcedownload"
+			+ " -nocache"
+			+ " -cachedir <dir>"
+			+ " -cachesize <MiB, default 1024>"
+			+ " -metamaxage <seconds to use cached meta unchecked, default 0>"
+			+ " -missingttl <seconds to remember missing files, default 300>"
+			+ " -metastaleness <seconds to show saved versions for while loading, default 86400>";
+
 	private static final String SELECT_CUSTOM_ITEM = "(select custom)";
+	private static final double MB = 1000000;
 
 	public JButton buttonInstall;
 
@@ -71,10 +103,14 @@ public abstract class Handler implements InstallerProgress {
 	public JTextField installLocation;
 	public JButton selectFolderButton;
 	public JLabel statusLabel;
+	private JProgressBar progressBar;
+	private final ProgressAggregator progress = new ProgressAggregator(this::showProgress);
 
 	public JCheckBox snapshotCheckBox;
 
 	private JPanel pane;
+	private boolean metaFailed;
+	private boolean updatingVersions;
 
 	public abstract String name();
 
@@ -84,6 +120,16 @@ public abstract class Handler implements InstallerProgress {
 
 	public abstract String cliHelp();
 
+	/**
+	 * Get the meta path of the profile that installing the given versions reads.
+	 */
+	protected abstract String getProfileMetaPath(String loaderVersion, String gameVersion);
+
+	/**
+	 * Get the libraries directory of the install location entered in the GUI.
+	 */
+	protected abstract Path getLibrariesDir();
+
 	//this isnt great, but works
 	public void setupPane1(JPanel pane, GridBagConstraints c, InstallerGui installerGui) { }
 
@@ -103,6 +149,7 @@ public abstract class Handler implements InstallerProgress {
 				gameVersionComboBox = new JComboBox<>(),
 				createSpacer(),
 				snapshotCheckBox = new JCheckBox(Utils.BUNDLE.getString("option.show.snapshots")));
+		gameVersionComboBox.addActionListener(e -> selectionChanged());
 		snapshotCheckBox.setSelected(false);
 		snapshotCheckBox.addActionListener(e -> {
 			if (Main.GAME_VERSION_META.isComplete()) {
@@ -110,12 +157,21 @@ public abstract class Handler implements InstallerProgress {
 			}
 		});
 
-		Main.GAME_VERSION_META.onComplete(versions -> {
+		Main.GAME_VERSION_META.onCompleteSwing(versions -> {
+			updateGameVersions();
+			updateReady();
+		});
+		Main.GAME_VERSION_META.onFailureSwing(this::metaFailed);
+		Main.GAME_VERSION_META.onRefreshSwing(versions -> {
+			// keep what the user picked when a refresh replaces the versions from the snapshot
+			Object selected = gameVersionComboBox.getSelectedItem();
 			updateGameVersions();
+			if (selected != null) gameVersionComboBox.setSelectedItem(selected);
 		});
 
 		addRow(pane, c, "prompt.loader.version",
 				loaderVersionComboBox = new JComboBox<>());
+		loaderVersionComboBox.addActionListener(e -> selectionChanged());
 
 		addRow(pane, c, "prompt.select.location",
 				installLocation = new JTextField(20),
@@ -130,40 +186,129 @@ public abstract class Handler implements InstallerProgress {
 				statusLabel = new JLabel());
 		statusLabel.setText(Utils.BUNDLE.getString("prompt.loading.versions"));
 
+		addRow(pane, c, null,
+				progressBar = new JProgressBar(0, 1000));
+		progressBar.setStringPainted(true);
+		progressBar.setString("");
+
 		addLastRow(pane, c, null,
 				buttonInstall = new JButton(Utils.BUNDLE.getString("prompt.install")));
+		buttonInstall.setEnabled(false); // until the versions are loaded
 		buttonInstall.addActionListener(e -> {
 			buttonInstall.setEnabled(false);
+			progress.reset();
 			install();
 		});
 
-		Main.LOADER_META.onComplete(versions -> {
-			int stableIndex = -1;
+		Main.LOADER_META.onFailureSwing(this::metaFailed);
+		Main.LOADER_META.onCompleteSwing(versions -> {
+			updateLoaderVersions();
+			updateReady();
+		});
+		Main.LOADER_META.onRefreshSwing(versions -> updateLoaderVersions());
 
-			for (int i = 0; i < versions.size(); i++) {
-				MetaHandler.GameVersion version = versions.get(i);
-				loaderVersionComboBox.addItem(version.getVersion());
+		return pane;
+	}
 
-				if (version.isStable()) {
-					stableIndex = i;
-				}
-			}
+	private void updateReady() {
+		if (Main.LOADER_META.isComplete() && Main.GAME_VERSION_META.isComplete()) {
+			statusLabel.setText(Utils.BUNDLE.getString("prompt.ready.install"));
+			buttonInstall.setEnabled(true);
+
+			if (pane.isShowing()) prefetch();
+		}
+	}
+
+	/**
+	 * Start downloading the selected versions in the background, so installing them right away is quick.
+	 */
+	void prefetch() {
+		if (!buttonInstall.isEnabled()) return; // versions not loaded yet, or an install is running
+
+		String gameVersion = (String) gameVersionComboBox.getSelectedItem();
+		String loaderVersion = (String) loaderVersionComboBox.getSelectedItem();
+		if (gameVersion == null || loaderVersion == null || loaderVersion.equals(SELECT_CUSTOM_ITEM)) return;
+
+		try {
+			InstallPrefetch.start(getProfileMetaPath(loaderVersion, gameVersion), getLibrariesDir());
+		} catch (InvalidPathException e) {
+			// nothing to prefetch for until the location is fixed
+		}
+	}
+
+	private void metaFailed(Throwable throwable) {
+		if (metaFailed) return; // both requests failing is reported once
+		metaFailed = true;
+
+		System.err.println("Unable to load metadata");
+		throwable.printStackTrace();
+
+		statusLabel.setText(throwable.getLocalizedMessage());
+		statusLabel.setForeground(Color.RED);
+	}
 
-			loaderVersionComboBox.addItem(SELECT_CUSTOM_ITEM);
+	/**
+	 * Prefetch the new selection, unless the combo boxes are being filled, which ends with a prefetch of its own.
+	 */
+	private void selectionChanged() {
+		if (!updatingVersions && pane.isShowing()) prefetch();
+	}
 
-			//If no stable versions are found, default to the latest version
-			if (stableIndex == -1) {
-				stableIndex = 0;
+	private void updateLoaderVersions() {
+		updatingVersions = true;
+
+		try {
+			fillLoaderVersions();
+		} finally {
+			updatingVersions = false;
+		}
+
+		if (pane.isShowing()) prefetch();
+	}
+
+	private void fillLoaderVersions() {
+		Object selected = loaderVersionComboBox.getSelectedItem();
+		List<MetaHandler.GameVersion> versions = Main.LOADER_META.getVersions();
+		int stableIndex = -1;
+
+		loaderVersionComboBox.removeAllItems();
+
+		for (int i = 0; i < versions.size(); i++) {
+			MetaHandler.GameVersion version = versions.get(i);
+			loaderVersionComboBox.addItem(version.getVersion());
+
+			if (version.isStable()) {
+				stableIndex = i;
 			}
+		}
 
-			loaderVersionComboBox.setSelectedIndex(stableIndex);
-			statusLabel.setText(Utils.BUNDLE.getString("prompt.ready.install"));
-		});
+		loaderVersionComboBox.addItem(SELECT_CUSTOM_ITEM);
 
-		return pane;
+		//If no stable versions are found, default to the latest version
+		if (stableIndex == -1) {
+			stableIndex = 0;
+		}
+
+		loaderVersionComboBox.setSelectedIndex(stableIndex);
+
+		if (selected != null) {
+			loaderVersionComboBox.setSelectedItem(selected);
+		}
 	}
 
 	private void updateGameVersions() {
+		updatingVersions = true;
+
+		try {
+			fillGameVersions();
+		} finally {
+			updatingVersions = false;
+		}
+
+		if (pane.isShowing()) prefetch();
+	}
+
+	private void fillGameVersions() {
 		gameVersionComboBox.removeAllItems();
 
 		for (MetaHandler.GameVersion version : Main.GAME_VERSION_META.getVersions()) {
@@ -210,10 +355,64 @@ public abstract class Handler implements InstallerProgress {
 		}
 	}
 
+	/**
+	 * Show text in the status label, safe to call from any thread and as often as needed.
+	 */
 	@Override
 	public void updateProgress(String text) {
-		statusLabel.setText(text);
-		statusLabel.setForeground(UIManager.getColor("Label.foreground"));
+		progress.updateProgress(text);
+	}
+
+	@Override
+	public void updateBytes(long done, long total) {
+		progress.updateBytes(done, total);
+	}
+
+	/**
+	 * Replace the progress with text, safe to call from any thread.
+	 *
+	 * <p>The label is set on the event dispatch thread after dropping the progress state, so neither a frame that is
+	 * already queued nor a later one can overwrite it.
+	 */
+	protected void showStatus(String text) {
+		progress.reset();
+		SwingUtilities.invokeLater(() -> {
+			statusLabel.setText(text);
+			statusLabel.setForeground(UIManager.getColor("Label.foreground"));
+		});
+	}
+
+	/**
+	 * Enable the install button again once an install finished, safe to call from any thread.
+	 */
+	protected void installFinished() {
+		SwingUtilities.invokeLater(() -> buttonInstall.setEnabled(true));
+	}
+
+	private void showProgress(String text, long bytesDone, long bytesTotal, double bytesPerSecond) {
+		if (text != null) {
+			statusLabel.setText(text);
+			statusLabel.setForeground(UIManager.getColor("Label.foreground"));
+		}
+
+		if (bytesTotal <= 0 && bytesDone == 0) {
+			progressBar.setIndeterminate(false);
+			progressBar.setValue(0);
+			progressBar.setString("");
+		} else if (bytesTotal <= 0) {
+			progressBar.setIndeterminate(true);
+			progressBar.setString(new MessageFormat(Utils.BUNDLE.getString("progress.bytes.unknown")).format(new Object[]{bytesDone / MB}));
+		} else {
+			progressBar.setIndeterminate(false);
+			progressBar.setValue((int) Math.min(1000, bytesDone * 1000 / bytesTotal));
+
+			if (bytesPerSecond > 0 && bytesDone < bytesTotal) {
+				long eta = (long) Math.ceil((bytesTotal - bytesDone) / bytesPerSecond);
+				progressBar.setString(new MessageFormat(Utils.BUNDLE.getString("progress.bytes.rate")).format(new Object[]{bytesDone / MB, bytesTotal / MB, bytesPerSecond / MB, eta}));
+			} else {
+				progressBar.setString(new MessageFormat(Utils.BUNDLE.getString("progress.bytes")).format(new Object[]{bytesDone / MB, bytesTotal / MB}));
+			}
+		}
 	}
 
 	protected String buildEditorPaneStyle() {
@@ -237,19 +436,24 @@ public abstract class Handler implements InstallerProgress {
 		String st = sw.toString().trim();
 		System.err.println(st);
 
-		String html = String.format("<html><body style=\"%s\">%s</body></html>",
-				buildEditorPaneStyle(),
-				st.replace(System.lineSeparator(), "<br>").replace("\t", "&ensp;"));
-		JEditorPane textPane = new JEditorPane("text/html", html);
-		textPane.setEditable(false);
+		// posted after the reset, so a progress frame that is already queued runs first and later ones leave the label alone
+		progress.reset();
 
-		statusLabel.setText(throwable.getLocalizedMessage());
-		statusLabel.setForeground(Color.RED);
+		SwingUtilities.invokeLater(() -> {
+			String html = String.format("<html><body style=\"%s\">%s</body></html>",
+					buildEditorPaneStyle(),
+					st.replace(System.lineSeparator(), "<br>").replace("\t", "&ensp;"));
+			JEditorPane textPane = new JEditorPane("text/html", html);
+			textPane.setEditable(false);
+
+			statusLabel.setText(throwable.getLocalizedMessage());
+			statusLabel.setForeground(Color.RED);
 
-		JOptionPane.showMessageDialog(pane,
-				textPane,
-				Utils.BUNDLE.getString("prompt.exception.occurrence"),
-				JOptionPane.ERROR_MESSAGE);
+			JOptionPane.showMessageDialog(pane,
+					textPane,
+					Utils.BUNDLE.getString("prompt.exception.occurrence"),
+					JOptionPane.ERROR_MESSAGE);
+		});
 	}
 
 	protected void addRow(Container parent, GridBagConstraints c, String label, Component... components) {
@@ -297,6 +501,12 @@ public abstract class Handler implements InstallerProgress {
 	}
 
 	protected String getGameVersion(ArgumentParser args) {
+		InstallBundle bundle = InstallBundle.getActive();
+		if (bundle != null) return getPinnedVersion(args, "mcversion", bundle.gameVersion);
+
+		InstallLock lock = InstallLock.getActive();
+		if (lock != null) return getPinnedVersion(args, "mcversion", lock.gameVersion);
+
 		return args.getOrDefault("mcversion", () -> {
 			System.out.println("Using latest game version");
 
@@ -305,10 +515,24 @@ public abstract class Handler implements InstallerProgress {
 	}
 
 	protected String getLoaderVersion(ArgumentParser args) {
+		InstallBundle bundle = InstallBundle.getActive();
+		if (bundle != null) return getPinnedVersion(args, "loader", bundle.loaderVersion);
+
+		InstallLock lock = InstallLock.getActive();
+		if (lock != null) return getPinnedVersion(args, "loader", lock.loaderVersion);
+
 		return args.getOrDefault("loader", () -> {
 			System.out.println("Using latest loader version");
 
 			return Main.LOADER_META.getLatestVersion(false).getVersion();
 		});
 	}
+
+	private static String getPinnedVersion(ArgumentParser args, String argument, String pinned) {
+		if (args.has(argument) && !args.get(argument).equals(pinned)) {
+			throw new IllegalArgumentException(String.format("The bundle or lockfile pins %s %s, not %s", argument, pinned, args.get(argument)));
+		}
+
+		return pinned;
+	}
 }
@@ -30,6 +30,8 @@ import java.awt.Image;
 import java.awt.Toolkit;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Locale;
 import java.util.function.Consumer;
@@ -38,6 +40,7 @@ import java.util.function.Supplier;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JTabbedPane;
+import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
 import javax.swing.WindowConstants;
@@ -61,8 +64,6 @@ public class InstallerGui extends JFrame {
 		setTaskBarImage(iconImage);
 
 		instance = this;
-
-		Main.loadMetadata();
 	}
 
 	public static void selectInstallLocation(Supplier<String> initalDir, Consumer<String> selectedDir) {
@@ -86,11 +87,33 @@ public class InstallerGui extends JFrame {
 			UIManager.put("TabbedPane.foreground", Color.BLACK);
 		}
 
-		InstallerGui dialog = new InstallerGui();
-		dialog.updateSize(true);
-		dialog.setTitle(Utils.BUNDLE.getString("installer.title"));
-		dialog.setLocationRelativeTo(null);
-		dialog.setVisible(true);
+		// built on the event dispatch thread, which is also where the version lists are filled in once they loaded
+		try {
+			SwingUtilities.invokeAndWait(() -> {
+				InstallerGui dialog;
+
+				try {
+					dialog = new InstallerGui();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+
+				dialog.updateSize(true);
+				dialog.setTitle(Utils.BUNDLE.getString("installer.title"));
+				dialog.setLocationRelativeTo(null);
+				dialog.setVisible(true);
+			});
+		} catch (InvocationTargetException e) {
+			Throwable cause = e.getCause();
+
+			if (cause instanceof UncheckedIOException) throw ((UncheckedIOException) cause).getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+
+			throw new RuntimeException(cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
 	}
 
 	public void updateSize(boolean updateMinimum) {
@@ -106,6 +129,7 @@ public class InstallerGui extends JFrame {
 	private void initComponents() {
 		contentPane = new JTabbedPane(JTabbedPane.TOP);
 		Main.HANDLERS.forEach(handler -> contentPane.addTab(Utils.BUNDLE.getString("tab." + handler.name().toLowerCase(Locale.ROOT)), handler.makePanel(this)));
+		contentPane.addChangeListener(e -> Main.HANDLERS.get(contentPane.getSelectedIndex()).prefetch());
 	}
 
 	private static void setTaskBarImage(Image image) {
@@ -26,16 +26,28 @@ package net.fabricmc.installer;
 
 import java.awt.GraphicsEnvironment;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletionException;
 
 import net.fabricmc.installer.client.ClientHandler;
 import net.fabricmc.installer.server.ServerHandler;
 import net.fabricmc.installer.util.ArgumentParser;
+import net.fabricmc.installer.util.ArtifactCache;
 import net.fabricmc.installer.util.CrashDialog;
+import net.fabricmc.installer.util.DownloadExecutor;
+import net.fabricmc.installer.util.FileDownloader;
+import net.fabricmc.installer.util.HttpCache;
+import net.fabricmc.installer.util.InstallBundle;
+import net.fabricmc.installer.util.InstallLock;
+import net.fabricmc.installer.util.MissingCache;
 import net.fabricmc.installer.util.NotebookService;
 import net.fabricmc.installer.util.MetaHandler;
 import net.fabricmc.installer.util.OperatingSystem;
+import net.fabricmc.installer.util.RetryPolicy;
+import net.fabricmc.installer.util.TransferLimits;
+import net.fabricmc.installer.util.Utils;
 
 public class Main {
 	public static MetaHandler GAME_VERSION_META;
@@ -65,6 +77,30 @@ public class Main {
 			NotebookService.setFixed(metaUrl, mavenUrl);
 		}
 
+		argumentParser.ifPresentInt("httptimeout", seconds -> Utils.setHttpTimeouts(seconds * 1000, seconds * 1000));
+		Utils.setPreferHttpClient(!argumentParser.has("legacyhttp"));
+		argumentParser.ifPresentDouble("hedge", NotebookService::setHedgePercentile);
+		argumentParser.ifPresentInt("threads", DownloadExecutor::setThreads);
+		argumentParser.ifPresentInt("segments", FileDownloader::setSegments);
+		argumentParser.ifPresentInt("retries", retries -> RetryPolicy.setMaxAttempts(retries + 1));
+		argumentParser.ifPresentLong("maxbandwidth", speed -> TransferLimits.setMaxBandwidth(speed * 1024));
+		argumentParser.ifPresentInt("maxconnections", TransferLimits::setMaxConnectionsPerHost);
+		argumentParser.ifPresentLong("minspeed", speed -> FileDownloader.setMinSpeed(speed * 1024));
+		argumentParser.ifPresentInt("stallwindow", FileDownloader::setStallWindow);
+		DownloadExecutor.setIncremental(!argumentParser.has("forcedownload"));
+
+		// Shared artifact cache, the location can also be set through the NOTEBOOK_INSTALLER_CACHE_DIR environment variable
+		if (argumentParser.has("nocache")) {
+			ArtifactCache.setCacheDir(null);
+		} else {
+			argumentParser.ifPresent("cachedir", dir -> ArtifactCache.setCacheDir(Paths.get(dir)));
+		}
+
+		argumentParser.ifPresentLong("cachesize", size -> ArtifactCache.setMaxSize(size * 1024 * 1024));
+		argumentParser.ifPresentLong("metamaxage", HttpCache::setMaxAge);
+		argumentParser.ifPresentLong("missingttl", MissingCache::setTtl);
+		argumentParser.ifPresentLong("metastaleness", MetaHandler::setMaxStaleness);
+
 		GAME_VERSION_META = new MetaHandler("game.json");
 		LOADER_META = new MetaHandler("loader.json");
 
@@ -74,6 +110,9 @@ public class Main {
 		}
 
 		if (command == null) {
+			// the versions load while Swing starts up
+			loadMetadataAsync();
+
 			try {
 				InstallerGui.start();
 			} catch (Exception e) {
@@ -83,22 +122,53 @@ public class Main {
 		} else if (command.equals("help")) {
 			System.out.println("help - Opens this menu");
 			HANDLERS.forEach(handler -> System.out.printf("%s %s\n", handler.name().toLowerCase(), handler.cliHelp()));
+			System.out.printf("bundle %s\n", BundleExporter.CLI_HELP);
+			System.out.printf("\nDownload options, accepted by every command:\n%s\n", Handler.DOWNLOAD_CLI_HELP);
 			loadMetadata();
 
 			System.out.printf("\nLatest Version: %s\nLatest Loader: %s\n", GAME_VERSION_META.getLatestVersion(argumentParser.has("snapshot")).getVersion(), Main.LOADER_META.getLatestVersion(false).getVersion());
-		} else {
+		} else if (command.equals("bundle")) {
 			loadMetadata();
+			BundleExporter.export(argumentParser);
+		} else {
+			// installing from a bundle or lockfile needs no meta, the versions come from there
+			InstallBundle bundle = argumentParser.has("frombundle") ? InstallBundle.open(Paths.get(argumentParser.get("frombundle"))) : null;
+			InstallLock lock = argumentParser.has("lock") ? InstallLock.read(Paths.get(argumentParser.get("lock"))) : null;
 
-			for (Handler handler : HANDLERS) {
-				if (command.equalsIgnoreCase(handler.name())) {
-					try {
-						handler.installCli(argumentParser);
-					} catch (Exception e) {
-						throw new RuntimeException("Failed to install " + handler.name(), e);
-					}
+			if (bundle == null && lock == null) {
+				loadMetadata();
+			}
 
-					return;
+			try {
+				InstallBundle.setActive(bundle);
+				InstallLock.setActive(lock);
+				InstallLock.Recorder recorder = argumentParser.has("writelock") ? InstallLock.startRecording() : null;
+
+				for (Handler handler : HANDLERS) {
+					if (command.equalsIgnoreCase(handler.name())) {
+						if (bundle != null && !bundle.side.equalsIgnoreCase(handler.name())) {
+							throw new IllegalArgumentException("The bundle was made for the " + bundle.side + " side");
+						}
+
+						if (lock != null && !lock.side.equalsIgnoreCase(handler.name())) {
+							throw new IllegalArgumentException("The lockfile was made for the " + lock.side + " side");
+						}
+
+						try {
+							handler.installCli(argumentParser);
+
+							if (recorder != null) {
+								recorder.finish().write(Paths.get(argumentParser.get("writelock")));
+							}
+						} catch (Exception e) {
+							throw new RuntimeException("Failed to install " + handler.name(), e);
+						}
+
+						return;
+					}
 				}
+			} finally {
+				if (bundle != null) bundle.close();
 			}
 
 			//Only reached if a handler is not found
@@ -107,11 +177,21 @@ public class Main {
 	}
 
 	public static void loadMetadata() {
+		loadMetadataAsync();
+
 		try {
-			LOADER_META.load();
-			GAME_VERSION_META.load();
-		} catch (Throwable t) {
-			throw new RuntimeException("Unable to load metadata", t);
+			LOADER_META.join();
+			GAME_VERSION_META.join();
+		} catch (CompletionException e) {
+			throw new RuntimeException("Unable to load metadata", e.getCause());
 		}
 	}
+
+	/**
+	 * Start loading the loader and game versions in parallel, without waiting for them.
+	 */
+	public static void loadMetadataAsync() {
+		LOADER_META.loadAsync();
+		GAME_VERSION_META.loadAsync();
+	}
 }
@@ -50,6 +50,7 @@ import net.fabricmc.installer.InstallerGui;
 import net.fabricmc.installer.LoaderVersion;
 import net.fabricmc.installer.launcher.MojangLauncherHelperWrapper;
 import net.fabricmc.installer.util.ArgumentParser;
+import net.fabricmc.installer.util.InstallPrefetch;
 import net.fabricmc.installer.util.InstallerProgress;
 import net.fabricmc.installer.util.NoopCaret;
 import net.fabricmc.installer.util.Reference;
@@ -104,13 +105,21 @@ public class ClientHandler extends Handler {
 
 						if (launcherType == null) {
 							// canceled
-							statusLabel.setText(Utils.BUNDLE.getString("prompt.ready.install"));
+							showStatus(Utils.BUNDLE.getString("prompt.ready.install"));
 							return;
 						}
 					}
 				}
 
-				String profileName = ClientInstaller.install(mcPath, gameVersion, loaderVersion, this);
+				String profileName;
+
+				InstallPrefetch prefetch = InstallPrefetch.claim(ClientInstaller.getProfileMetaPath(loaderVersion.name, gameVersion), mcPath.resolve("libraries"));
+
+				try {
+					profileName = ClientInstaller.install(mcPath, gameVersion, loaderVersion, this);
+				} finally {
+					if (prefetch != null) prefetch.close();
+				}
 
 				if (createProfile.isSelected()) {
 					if (launcherType == null) {
@@ -124,7 +133,7 @@ public class ClientHandler extends Handler {
 			} catch (Exception e) {
 				error(e);
 			} finally {
-				buttonInstall.setEnabled(true);
+				installFinished();
 			}
 		}).start();
 	}
@@ -232,7 +241,17 @@ public class ClientHandler extends Handler {
 
 	@Override
 	public String cliHelp() {
-		return "-dir <install dir> -mcversion <minecraft version, default latest> -loader <loader version, default latest> -launcher [win32, microsoft_store]";
+		return "-dir <install dir> -mcversion <minecraft version, default latest> -loader <loader version, default latest> -launcher [win32, microsoft_store] -frombundle <bundle file> -lock <lockfile> -writelock <lockfile to record the installed versions in>";
+	}
+
+	@Override
+	protected String getProfileMetaPath(String loaderVersion, String gameVersion) {
+		return ClientInstaller.getProfileMetaPath(loaderVersion, gameVersion);
+	}
+
+	@Override
+	protected Path getLibrariesDir() {
+		return Paths.get(installLocation.getText()).resolve("libraries");
 	}
 
 	@Override
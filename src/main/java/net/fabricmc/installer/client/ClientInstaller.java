@@ -24,15 +24,25 @@
 
 package net.fabricmc.installer.client;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.text.MessageFormat;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.UUID;
 
 import mjson.Json;
 
 import net.fabricmc.installer.LoaderVersion;
+import net.fabricmc.installer.util.DownloadExecutor;
+import net.fabricmc.installer.util.InstallLock;
+import net.fabricmc.installer.util.JsonReader;
 import net.fabricmc.installer.util.NotebookService;
 import net.fabricmc.installer.util.InstallerProgress;
 import net.fabricmc.installer.util.Library;
@@ -40,6 +50,10 @@ import net.fabricmc.installer.util.Reference;
 import net.fabricmc.installer.util.Utils;
 
 public class ClientInstaller {
+	public static String getProfileMetaPath(String loaderVersion, String gameVersion) {
+		return String.format("download/%s/notebook-loader-%s-%s.json", loaderVersion, loaderVersion, gameVersion);
+	}
+
 	public static String install(Path mcDir, String gameVersion, LoaderVersion loaderVersion, InstallerProgress progress) throws IOException {
 		System.out.println("Installing " + gameVersion + " with fabric " + loaderVersion.name);
 
@@ -56,27 +70,115 @@ public class ClientInstaller {
 		Path profileJar = profileDir.resolve(profileName + ".jar");
 		Files.deleteIfExists(profileJar);
 
-		Json json = NotebookService.queryMetaJson(String.format("download/%s/notebook-loader-%s-%s.json", loaderVersion.name, loaderVersion.name, gameVersion));
-		Files.write(profileJson, json.toString().getBytes(StandardCharsets.UTF_8));
+		String metaPath = getProfileMetaPath(loaderVersion.name, gameVersion);
+		List<Library> libraries = NotebookService.readMeta(metaPath, is -> writeProfile(is, profileJson));
 
 		/*
 		Downloading the libraries isn't strictly necessary as the launcher will do it for us.
 		Do it anyway in case the launcher fails, we know we have a working connection to maven here.
 		 */
 		Path libsDir = mcDir.resolve("libraries");
+		DownloadExecutor.downloadLibraries(libraries, libsDir, progress);
 
-		for (Json libraryJson : json.at("libraries").asJsonList()) {
-			Library library = new Library(libraryJson);
-			Path libraryFile = libsDir.resolve(library.getPath());
-			String url = library.getURL();
-
-			//System.out.println("Downloading "+url+" to "+libraryFile);
-			progress.updateProgress(new MessageFormat(Utils.BUNDLE.getString("progress.download.library.entry")).format(new Object[]{library.name}));
-			NotebookService.downloadSubstitutedMaven(url, libraryFile);
-		}
+		InstallLock.Recorder recorder = InstallLock.getRecorder();
+		if (recorder != null) recorder.recordProfile("client", loaderVersion.name, gameVersion, metaPath, Json.read(Utils.readString(profileJson)), libsDir);
 
 		progress.updateProgress(Utils.BUNDLE.getString("progress.done"));
 
 		return profileName;
 	}
+
+	/**
+	 * Copy the profile json to profileJson as it is, picking the libraries out of it on the way.
+	 *
+	 * <p>The bytes go to a temporary file first, so a failed or concurrent hedged read never leaves a partial profile.
+	 */
+	static List<Library> writeProfile(InputStream is, Path profileJson) throws IOException {
+		Path tmp = profileJson.resolveSibling(profileJson.getFileName() + "." + UUID.randomUUID() + ".tmp");
+
+		try {
+			List<Library> libraries = null;
+
+			try (OutputStream os = Files.newOutputStream(tmp)) {
+				InputStream tee = new TeeInputStream(is, os);
+				JsonReader reader = new JsonReader(new InputStreamReader(tee, StandardCharsets.UTF_8));
+
+				reader.beginObject();
+
+				while (reader.hasNext()) {
+					if (reader.nextName().equals("libraries")) {
+						libraries = Library.readList(reader);
+					} else {
+						reader.skipValue();
+					}
+				}
+
+				reader.endObject();
+
+				// copy whatever the reader didn't buffer yet, such as trailing whitespace
+				byte[] buffer = new byte[8192];
+
+				while (tee.read(buffer) >= 0) {
+					// the tee writes it
+				}
+			}
+
+			if (libraries == null) throw new IOException("Loader profile without libraries");
+
+			try {
+				Files.move(tmp, profileJson, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp, profileJson, StandardCopyOption.REPLACE_EXISTING);
+			}
+
+			return libraries;
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	private static final class TeeInputStream extends FilterInputStream {
+		private final OutputStream out;
+
+		TeeInputStream(InputStream in, OutputStream out) {
+			super(in);
+
+			this.out = out;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int ret = super.read();
+			if (ret >= 0) out.write(ret);
+
+			return ret;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int ret = super.read(b, off, len);
+			if (ret > 0) out.write(b, off, ret);
+
+			return ret;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			// read instead of skipping, so the skipped bytes still reach the copy
+			byte[] buffer = new byte[(int) Math.min(8192, Math.max(n, 0))];
+			long ret = 0;
+			int len;
+
+			while (ret < n && (len = read(buffer, 0, (int) Math.min(buffer.length, n - ret))) >= 0) {
+				ret += len;
+			}
+
+			return ret;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false; // a reset would write the marked bytes twice
+		}
+	}
 }
@@ -28,9 +28,14 @@ import java.io.IOException;
 import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
 
+import net.fabricmc.installer.util.ArtifactCache;
+import net.fabricmc.installer.util.FileDownloader;
+import net.fabricmc.installer.util.InstallBundle;
+import net.fabricmc.installer.util.InstallLock;
+import net.fabricmc.installer.util.InstallerProgress;
 import net.fabricmc.installer.util.LauncherMeta;
+import net.fabricmc.installer.util.RetryPolicy;
 import net.fabricmc.installer.util.Utils;
 import net.fabricmc.installer.util.VersionMeta;
 
@@ -42,28 +47,47 @@ public class MinecraftServerDownloader {
 	}
 
 	public void downloadMinecraftServer(Path serverJar) throws IOException {
-		if (isServerJarValid(serverJar)) {
-			System.out.println("Existing server jar valid, not downloading");
+		downloadMinecraftServer(serverJar, null);
+	}
+
+	public void downloadMinecraftServer(Path serverJar, FileDownloader.ProgressListener progress) throws IOException {
+		InstallBundle bundle = InstallBundle.getActive();
+
+		if (bundle != null) {
+			String entry = InstallBundle.getServerEntry(gameVersion);
+
+			if (bundle.matches(entry, serverJar)) {
+				System.out.println("Existing server jar valid, not extracting");
+			} else {
+				bundle.extract(entry, serverJar);
+			}
+
 			return;
 		}
 
-		Path serverJarTmp = serverJar.resolveSibling(serverJar.getFileName().toString() + ".tmp");
-		Files.deleteIfExists(serverJar);
-		Utils.downloadFile(new URL(getServerDownload().url), serverJarTmp);
+		VersionMeta.Download download = getServerDownload();
+		InstallLock.Recorder recorder = InstallLock.getRecorder();
+		if (recorder != null) recorder.recordServer(download);
 
-		if (!isServerJarValid(serverJarTmp)) {
-			throw new IOException("Failed to validate downloaded server jar");
+		if (isServerJarValid(serverJar, download)) {
+			System.out.println("Existing server jar valid, not downloading");
+			return;
 		}
 
-		Files.move(serverJarTmp, serverJar, StandardCopyOption.REPLACE_EXISTING);
+		// the download is verified while streaming and moved into place atomically, a partial one is resumed
+		RetryPolicy.run("Minecraft server " + gameVersion, InstallerProgress.CONSOLE, () -> {
+			ArtifactCache.fetch(String.format("net/minecraft/server/%s/server-%s.jar", gameVersion, gameVersion), download.sha1, serverJar,
+					out -> FileDownloader.download(new URL(download.url), out, download.size, download.sha1, progress));
+			return null;
+		});
 	}
 
-	private boolean isServerJarValid(Path serverJar) throws IOException {
-		if (!Files.exists(serverJar)) {
+	private static boolean isServerJarValid(Path serverJar, VersionMeta.Download download) throws IOException {
+		if (!Files.exists(serverJar) || Files.size(serverJar) != download.size) {
 			return false;
 		}
 
-		return Utils.sha1String(serverJar).equalsIgnoreCase(getServerDownload().sha1);
+		return Utils.sha1String(serverJar).equalsIgnoreCase(download.sha1);
 	}
 
 	private VersionMeta getVersionMeta() throws IOException {
@@ -77,6 +101,15 @@ public class MinecraftServerDownloader {
 	}
 
 	private VersionMeta.Download getServerDownload() throws IOException {
+		InstallLock lock = InstallLock.getActive();
+
+		if (lock != null) {
+			VersionMeta.Download ret = lock.getServerDownload();
+			if (ret == null) throw new IOException("The lockfile has no Minecraft server download, lock an install that used -downloadMinecraft");
+
+			return ret;
+		}
+
 		return getVersionMeta().downloads.get("server");
 	}
 }
@@ -45,6 +45,7 @@ import net.fabricmc.installer.Handler;
 import net.fabricmc.installer.InstallerGui;
 import net.fabricmc.installer.LoaderVersion;
 import net.fabricmc.installer.util.ArgumentParser;
+import net.fabricmc.installer.util.InstallPrefetch;
 import net.fabricmc.installer.util.InstallerProgress;
 import net.fabricmc.installer.util.Reference;
 import net.fabricmc.installer.util.Utils;
@@ -63,13 +64,23 @@ public class ServerHandler extends Handler {
 
 		new Thread(() -> {
 			try {
-				ServerInstaller.install(Paths.get(installLocation.getText()).toAbsolutePath(), loaderVersion, gameVersion, this);
+				Path dir = Paths.get(installLocation.getText()).toAbsolutePath();
+
+				// installs from a local loader jar don't read the profile
+				InstallPrefetch prefetch = loaderVersion.path == null ? InstallPrefetch.claim(ServerInstaller.getProfileMetaPath(loaderVersion.name, gameVersion), dir.resolve("libraries")) : null;
+
+				try {
+					ServerInstaller.install(dir, loaderVersion, gameVersion, this);
+				} finally {
+					if (prefetch != null) prefetch.close();
+				}
+
 				ServerPostInstallDialog.show(this);
 			} catch (Exception e) {
 				error(e);
 			}
 
-			buttonInstall.setEnabled(true);
+			installFinished();
 		}).start();
 	}
 
@@ -98,7 +109,17 @@ public class ServerHandler extends Handler {
 
 	@Override
 	public String cliHelp() {
-		return "-dir <install dir, default current dir> -mcversion <minecraft version, default latest> -loader <loader version, default latest> -downloadMinecraft";
+		return "-dir <install dir, default current dir> -mcversion <minecraft version, default latest> -loader <loader version, default latest> -downloadMinecraft -frombundle <bundle file> -lock <lockfile> -writelock <lockfile to record the installed versions in>";
+	}
+
+	@Override
+	protected String getProfileMetaPath(String loaderVersion, String gameVersion) {
+		return ServerInstaller.getProfileMetaPath(loaderVersion, gameVersion);
+	}
+
+	@Override
+	protected Path getLibrariesDir() {
+		return Paths.get(installLocation.getText()).toAbsolutePath().resolve("libraries");
 	}
 
 	@Override
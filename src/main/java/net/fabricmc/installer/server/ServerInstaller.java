@@ -58,6 +58,8 @@ import java.util.zip.ZipOutputStream;
 import mjson.Json;
 
 import net.fabricmc.installer.LoaderVersion;
+import net.fabricmc.installer.util.DownloadExecutor;
+import net.fabricmc.installer.util.InstallLock;
 import net.fabricmc.installer.util.NotebookService;
 import net.fabricmc.installer.util.InstallerProgress;
 import net.fabricmc.installer.util.Library;
@@ -69,6 +71,10 @@ public class ServerInstaller {
 	public static final String DEFAULT_LAUNCH_JAR_NAME = "notebook-server-launch.jar";
 	private static final Pattern SIGNATURE_FILE_PATTERN = Pattern.compile("META-INF/[^/]+\\.(SF|DSA|RSA|EC)");
 
+	public static String getProfileMetaPath(String loaderVersion, String gameVersion) {
+		return String.format("download/%s/notebook-loader-%s-%s-server.json", loaderVersion, loaderVersion, gameVersion);
+	}
+
 	public static void install(Path dir, LoaderVersion loaderVersion, String gameVersion, InstallerProgress progress) throws IOException {
 		Path launchJar = dir.resolve(DEFAULT_LAUNCH_JAR_NAME);
 		install(dir, loaderVersion, gameVersion, progress, launchJar);
@@ -86,15 +92,18 @@ public class ServerInstaller {
 
 		List<Library> libraries = new ArrayList<>();
 		String mainClassMeta;
+		String metaPath = null;
+		Json profile = null;
 
 		if (loaderVersion.path == null) { // loader jar unavailable, grab everything from meta
-			Json json = NotebookService.queryMetaJson(String.format("download/%s/notebook-loader-%s-%s-server.json", loaderVersion.name, loaderVersion.name, gameVersion));
+			metaPath = getProfileMetaPath(loaderVersion.name, gameVersion);
+			profile = NotebookService.queryMetaJson(metaPath);
 
-			for (Json libraryJson : json.at("libraries").asJsonList()) {
+			for (Json libraryJson : profile.at("libraries").asJsonList()) {
 				libraries.add(new Library(libraryJson));
 			}
 
-			mainClassMeta = json.at("mainClass").asString();
+			mainClassMeta = profile.at("mainClass").asString();
 		} else { // loader jar available, generate library list from it
 			libraries.add(new Library(String.format("com.bookkeepersmc:notebook-loader:%s", loaderVersion.name), null, loaderVersion.path));
 			libraries.add(new Library(String.format("net.fabricmc:intermediary:%s", gameVersion), "https://maven.fabricmc.net/", null));
@@ -119,13 +128,18 @@ public class ServerInstaller {
 		String mainClassManifest = "net.fabricmc.loader.launch.server.FabricServerLauncher";
 		List<Path> libraryFiles = new ArrayList<>();
 
+		DownloadExecutor.downloadLibraries(libraries, libsDir, progress);
+
+		InstallLock.Recorder recorder = InstallLock.getRecorder();
+
+		if (recorder != null && profile != null) { // installs from a local loader jar can't be replayed elsewhere
+			recorder.recordProfile("server", loaderVersion.name, gameVersion, metaPath, profile, libsDir);
+		}
+
 		for (Library library : libraries) {
 			Path libraryFile = libsDir.resolve(library.getPath());
 
-			if (library.inputPath == null) {
-				progress.updateProgress(new MessageFormat(Utils.BUNDLE.getString("progress.download.library.entry")).format(new Object[]{library.name}));
-				NotebookService.downloadSubstitutedMaven(library.getURL(), libraryFile);
-			} else {
+			if (library.inputPath != null) {
 				Files.createDirectories(libraryFile.getParent());
 				Files.copy(library.inputPath, libraryFile, StandardCopyOption.REPLACE_EXISTING);
 			}
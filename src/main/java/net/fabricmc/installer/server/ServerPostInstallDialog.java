@@ -30,19 +30,14 @@ import java.awt.FlowLayout;
 import java.awt.Font;
 import java.awt.HeadlessException;
 import java.awt.Toolkit;
-import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.text.MessageFormat;
 import java.util.HashMap;
 import java.util.Map;
@@ -65,7 +60,7 @@ import javax.swing.UnsupportedLookAndFeelException;
 import mjson.Json;
 
 import net.fabricmc.installer.InstallerGui;
-import net.fabricmc.installer.util.LauncherMeta;
+import net.fabricmc.installer.util.ProgressAggregator;
 import net.fabricmc.installer.util.Utils;
 
 @SuppressWarnings("serial")
@@ -79,7 +74,6 @@ public class ServerPostInstallDialog extends JDialog {
 	private final String minecraftVersion;
 	private final Path installDir;
 	private final Path minecraftJar;
-	private final Path minecraftJarTmp;
 
 	private JLabel serverJarLabel;
 	private JButton downloadButton;
@@ -91,7 +85,6 @@ public class ServerPostInstallDialog extends JDialog {
 		this.minecraftVersion = (String) handler.gameVersionComboBox.getSelectedItem();
 		this.installDir = Paths.get(handler.installLocation.getText());
 		this.minecraftJar = installDir.resolve("server.jar");
-		this.minecraftJarTmp = installDir.resolve("server.jar.tmp");
 
 		panel.setLayout(new BoxLayout(panel, BoxLayout.PAGE_AXIS));
 		initComponents();
@@ -183,43 +176,30 @@ public class ServerPostInstallDialog extends JDialog {
 	private void doServerJarDownload() {
 		downloadButton.setEnabled(false);
 
-		try {
-			Files.deleteIfExists(minecraftJar);
-			Files.deleteIfExists(minecraftJarTmp);
-		} catch (IOException e) {
-			color(serverJarLabel, Color.RED).setText(e.getMessage());
-			serverHandler.error(e);
-			return;
-		}
-
 		new Thread(() -> {
 			try {
-				URL url = new URL(LauncherMeta.getLauncherMeta().getVersion(minecraftVersion).getVersionMeta().downloads.get("server").url);
-				HttpURLConnection httpConnection = (HttpURLConnection) url.openConnection();
-				int finalSize = httpConnection.getContentLength();
-
-				try (BufferedInputStream inputStream = new BufferedInputStream(httpConnection.getInputStream());
-						OutputStream outputStream = Files.newOutputStream(minecraftJarTmp)) {
-					byte[] buffer = new byte[4096];
-					long downloaded = 0;
-					int len;
-
-					while ((len = inputStream.read(buffer, 0, buffer.length)) >= 0) {
-						downloaded += len;
-
-						final String labelText = new MessageFormat(Utils.BUNDLE.getString("prompt.server.downloading")).format(new Object[] {downloaded / MB, finalSize / MB});
-						SwingUtilities.invokeLater(() -> color(serverJarLabel, Color.BLUE).setText(labelText));
-
-						outputStream.write(buffer, 0, len);
-					}
+				MinecraftServerDownloader downloader = new MinecraftServerDownloader(minecraftVersion);
+				// the download reports every buffer, only the latest count is shown once per frame
+				ProgressAggregator progress = new ProgressAggregator((text, downloaded, finalSize, bytesPerSecond) -> {
+					if (downloaded == 0) return;
+
+					String labelText = new MessageFormat(Utils.BUNDLE.getString("prompt.server.downloading")).format(new Object[] {downloaded / MB, finalSize / MB});
+					color(serverJarLabel, Color.BLUE).setText(labelText);
+				});
+
+				try {
+					downloader.downloadMinecraftServer(minecraftJar, progress::updateBytes);
+				} finally {
+					progress.reset();
 				}
 
-				Files.move(minecraftJarTmp, minecraftJar, StandardCopyOption.REPLACE_EXISTING);
-
-				updateServerJarLabel();
-				downloadButton.setEnabled(true);
+				// queued behind any progress frame posted before the reset
+				SwingUtilities.invokeLater(() -> {
+					updateServerJarLabel();
+					downloadButton.setEnabled(true);
+				});
 			} catch (IOException e) {
-				color(serverJarLabel, Color.RED).setText(e.getMessage());
+				SwingUtilities.invokeLater(() -> color(serverJarLabel, Color.RED).setText(e.getMessage()));
 				serverHandler.error(e);
 			}
 		}).start();
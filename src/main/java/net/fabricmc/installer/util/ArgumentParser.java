@@ -28,6 +28,9 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
 import java.util.function.Supplier;
 
 public class ArgumentParser {
@@ -73,6 +76,36 @@ public class ArgumentParser {
 		}
 	}
 
+	public void ifPresentInt(String argument, IntConsumer consumer) {
+		ifPresent(argument, value -> consumer.accept(Integer.parseInt(value)), "a whole number");
+	}
+
+	public void ifPresentLong(String argument, LongConsumer consumer) {
+		ifPresent(argument, value -> consumer.accept(Long.parseLong(value)), "a whole number");
+	}
+
+	public void ifPresentDouble(String argument, DoubleConsumer consumer) {
+		ifPresent(argument, value -> consumer.accept(Double.parseDouble(value)), "a number");
+	}
+
+	/**
+	 * Like {@link #ifPresent(String, Consumer)}, but a value the consumer can't parse or rejects is reported together
+	 * with the argument name.
+	 */
+	private void ifPresent(String argument, Consumer<String> consumer, String expected) {
+		if (!has(argument)) return;
+
+		String value = get(argument);
+
+		try {
+			consumer.accept(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(String.format("Invalid value %s for -%s, expected %s", value, argument, expected), e);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException(String.format("Invalid value %s for -%s: %s", value, argument, e.getMessage()), e);
+		}
+	}
+
 	public Optional<String> getCommand() {
 		return command == null ? Optional.empty() : Optional.of(command);
 	}
@@ -0,0 +1,311 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer.util;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Persistent artifact store shared between installs and installer processes.
+ *
+ * <p>Artifacts are stored once under objects/ by their sha1, keys such as a maven path map to that sha1 through a
+ * small index file. Targets are filled by copy, so the installed files can be changed without touching the cache and
+ * the modification time of an object only tracks its last use.
+ *
+ * <p>The size cap covers the objects, the {@link HttpCache} bodies and partial downloads. The size is measured once per
+ * process and then counted up as files are added, the directories are only walked again once it exceeds the cap.
+ */
+public final class ArtifactCache {
+	public static final String CACHE_DIR_ENV = "NOTEBOOK_INSTALLER_CACHE_DIR";
+	private static final long DEFAULT_MAX_SIZE = 1024L * 1024 * 1024;
+
+	private static final Map<String, Object> LOCAL_LOCKS = new ConcurrentHashMap<>();
+
+	private static Path cacheDir = getDefaultCacheDir();
+	private static long maxSize = DEFAULT_MAX_SIZE;
+	private static long cacheSize = -1; // -1 until measured, guarded by the class lock
+
+	/**
+	 * Fill target with the artifact identified by key, downloading it into the cache first if it isn't present.
+	 *
+	 * @param key relative path identifying the artifact, e.g. its maven path
+	 * @param sha1 expected sha1 of the artifact or null if unknown
+	 */
+	public static void fetch(String key, String sha1, Path target, Fetcher fetcher) throws IOException {
+		if (cacheDir == null) {
+			fetcher.download(target);
+			return;
+		}
+
+		Path indexFile = cacheDir.resolve("index").resolve(key + ".sha1");
+
+		withLock(key, () -> {
+			String expectedSha1 = sha1 != null ? sha1.toLowerCase(Locale.ROOT) : readIndex(indexFile);
+
+			if (expectedSha1 != null) {
+				Path object = getObject(expectedSha1);
+
+				if (Files.exists(object)) {
+					try {
+						Files.setLastModifiedTime(object, FileTime.fromMillis(System.currentTimeMillis()));
+						copy(object, target);
+						return;
+					} catch (NoSuchFileException e) {
+						// evicted by another process in the meantime, download again
+					}
+				}
+			}
+
+			// the key lock is held, so the path can be stable and a resumable fetcher can continue a partial file
+			Path tmp = cacheDir.resolve("tmp").resolve(getKeyHash(key));
+			Files.createDirectories(tmp.getParent());
+			String actualSha1 = fetcher.download(tmp);
+			if (actualSha1 == null) actualSha1 = Utils.sha1String(tmp);
+
+			if (sha1 != null && !actualSha1.equalsIgnoreCase(sha1)) {
+				Files.deleteIfExists(tmp);
+				throw new IOException("Checksum mismatch for " + key + ": expected " + sha1 + ", got " + actualSha1);
+			}
+
+			Path object = getObject(actualSha1);
+			Files.createDirectories(object.getParent());
+			Files.move(tmp, object, StandardCopyOption.REPLACE_EXISTING);
+
+			Files.createDirectories(indexFile.getParent());
+			Utils.writeToFile(indexFile, actualSha1);
+
+			copy(object, target);
+			recordWrite(Files.size(object));
+		});
+	}
+
+	/**
+	 * Get the sha1 recorded when the artifact for key was last downloaded, or null if unknown.
+	 */
+	public static String getIndexedSha1(String key) throws IOException {
+		if (cacheDir == null) return null;
+
+		return readIndex(cacheDir.resolve("index").resolve(key + ".sha1"));
+	}
+
+	public interface Fetcher {
+		/**
+		 * @return the SHA-1 hex string of the downloaded file, or null to let the cache hash it
+		 */
+		String download(Path out) throws IOException;
+	}
+
+	public static synchronized void setCacheDir(Path dir) {
+		cacheDir = dir != null ? dir.toAbsolutePath().normalize() : null;
+		cacheSize = -1;
+	}
+
+	public static Path getCacheDir() {
+		return cacheDir;
+	}
+
+	public static void setMaxSize(long bytes) {
+		if (bytes < 0) throw new IllegalArgumentException("negative cache size: " + bytes);
+
+		maxSize = bytes;
+	}
+
+	private static Path getObject(String sha1) {
+		return cacheDir.resolve("objects").resolve(sha1.substring(0, 2)).resolve(sha1);
+	}
+
+	private static String readIndex(Path indexFile) throws IOException {
+		try {
+			String sha1 = Utils.readString(indexFile).trim();
+			return sha1.isEmpty() ? null : sha1;
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+	}
+
+	private static void copy(Path object, Path target) throws IOException {
+		Files.createDirectories(target.getParent());
+		// copy next to the target first, so the target is replaced atomically
+		Path tmp = target.resolveSibling(target.getFileName() + ".copy.tmp");
+		Files.copy(object, tmp, StandardCopyOption.REPLACE_EXISTING);
+
+		try {
+			Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Run action while holding both the in-process and the cross-process lock for key.
+	 */
+	static void withLock(String key, LockedAction action) throws IOException {
+		String lockName = getKeyHash(key) + ".lock";
+		Path lockFile = cacheDir.resolve("locks").resolve(lockName);
+		Files.createDirectories(lockFile.getParent());
+
+		// FileLock is held per JVM, so threads of the same process have to be serialized separately
+		synchronized (LOCAL_LOCKS.computeIfAbsent(lockName, k -> new Object())) {
+			try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+				channel.lock(); // released when the channel is closed
+				action.run();
+			}
+		}
+	}
+
+	private static String getKeyHash(String key) {
+		return Utils.bytesToHex(Utils.sha1(key.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	interface LockedAction {
+		void run() throws IOException;
+	}
+
+	/**
+	 * Count bytes added to the cache directory, evicting once the cache exceeds its size cap.
+	 */
+	static synchronized void recordWrite(long bytes) throws IOException {
+		if (cacheDir == null) return;
+
+		if (cacheSize >= 0 && cacheSize + bytes <= maxSize) {
+			cacheSize += bytes;
+		} else {
+			cacheSize = evictIfNeeded();
+		}
+	}
+
+	/**
+	 * Delete the least recently used files until the cache is below its size cap.
+	 *
+	 * @return the size of the cache afterwards
+	 */
+	private static long evictIfNeeded() throws IOException {
+		List<Path> files = new ArrayList<>();
+		addFiles(cacheDir.resolve("objects"), files);
+		addFiles(cacheDir.resolve("http"), files);
+		addFiles(cacheDir.resolve("tmp"), files);
+
+		long totalSize = 0;
+
+		for (Path file : files) {
+			totalSize += getSize(file);
+		}
+
+		if (totalSize <= maxSize) return totalSize;
+
+		Path lockFile = cacheDir.resolve("locks").resolve("evict.lock");
+		Files.createDirectories(lockFile.getParent());
+
+		try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+				FileLock lock = channel.tryLock()) {
+			if (lock == null) return totalSize; // another process is already evicting
+
+			files.sort(Comparator.comparing(ArtifactCache::getLastModifiedTime));
+
+			for (Path file : files) {
+				if (totalSize <= maxSize) break;
+
+				long size = getSize(file);
+
+				try {
+					Files.deleteIfExists(file);
+					totalSize -= size;
+				} catch (IOException e) {
+					// in use, e.g. a partial download on Windows
+				}
+			}
+		}
+
+		return totalSize;
+	}
+
+	/**
+	 * Add the evictable files below dir: everything except the small http metadata, which just turns into a miss once
+	 * its body is gone.
+	 */
+	private static void addFiles(Path dir, List<Path> files) throws IOException {
+		if (!Files.isDirectory(dir)) return;
+
+		try (Stream<Path> stream = Files.walk(dir)) {
+			stream.filter(path -> Files.isRegularFile(path) && !path.getFileName().toString().endsWith(".properties"))
+					.forEach(files::add);
+		}
+	}
+
+	private static long getSize(Path path) {
+		try {
+			return Files.size(path);
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	private static FileTime getLastModifiedTime(Path path) {
+		try {
+			return Files.getLastModifiedTime(path);
+		} catch (IOException e) {
+			return FileTime.fromMillis(0);
+		}
+	}
+
+	private static Path getDefaultCacheDir() {
+		String env = System.getenv(CACHE_DIR_ENV);
+		if (env != null && !env.isEmpty()) return Paths.get(env).toAbsolutePath().normalize();
+
+		Path dir;
+		String home = System.getProperty("user.home", ".");
+
+		if (OperatingSystem.CURRENT == OperatingSystem.WINDOWS && System.getenv("LOCALAPPDATA") != null) {
+			dir = Paths.get(System.getenv("LOCALAPPDATA")).resolve("notebook-installer");
+		} else if (OperatingSystem.CURRENT == OperatingSystem.MACOS) {
+			dir = Paths.get(home).resolve("Library").resolve("Caches").resolve("notebook-installer");
+		} else if (System.getenv("XDG_CACHE_HOME") != null) {
+			dir = Paths.get(System.getenv("XDG_CACHE_HOME")).resolve("notebook-installer");
+		} else {
+			dir = Paths.get(home).resolve(".cache").resolve("notebook-installer");
+		}
+
+		return dir.toAbsolutePath().normalize();
+	}
+
+	private ArtifactCache() { }
+}
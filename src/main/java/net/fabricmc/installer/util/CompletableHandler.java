@@ -24,25 +24,66 @@
 
 package net.fabricmc.installer.util;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
-public class CompletableHandler<T> {
-	private boolean complete;
+import javax.swing.SwingUtilities;
 
-	private List<Consumer<T>> completeConsumers = new ArrayList<>();
+/**
+ * Value that becomes available asynchronously. Callbacks may be registered from any thread, before or after completion,
+ * and each runs once.
+ */
+public class CompletableHandler<T> {
+	private final CompletableFuture<T> future = new CompletableFuture<>();
 
+	/**
+	 * Run completeConsumer once complete, on the completing thread or right away if already complete.
+	 */
 	public void onComplete(Consumer<T> completeConsumer) {
-		completeConsumers.add(completeConsumer);
+		logFailure(future.thenAccept(completeConsumer));
+	}
+
+	/**
+	 * Run completeConsumer on the Swing event dispatch thread once complete.
+	 */
+	public void onCompleteSwing(Consumer<T> completeConsumer) {
+		logFailure(future.thenAcceptAsync(completeConsumer, SwingUtilities::invokeLater));
+	}
+
+	/**
+	 * Run failureConsumer on the Swing event dispatch thread if completing failed.
+	 */
+	public void onFailureSwing(Consumer<Throwable> failureConsumer) {
+		future.whenCompleteAsync((value, t) -> {
+			if (t != null) failureConsumer.accept(t);
+		}, SwingUtilities::invokeLater);
 	}
 
 	protected void complete(T value) {
-		complete = true;
-		completeConsumers.forEach(listConsumer -> listConsumer.accept(value));
+		future.complete(value);
+	}
+
+	protected void fail(Throwable t) {
+		future.completeExceptionally(t);
 	}
 
 	public boolean isComplete() {
-		return complete;
+		return future.isDone() && !future.isCompletedExceptionally();
+	}
+
+	/**
+	 * Wait for completion.
+	 *
+	 * @throws java.util.concurrent.CompletionException wrapping the failure if completing failed
+	 */
+	public T join() {
+		return future.join();
+	}
+
+	private void logFailure(CompletableFuture<Void> callback) {
+		callback.whenComplete((ignored, t) -> {
+			// a failed value is reported through onFailureSwing, only report callbacks that threw themselves
+			if (t != null && !future.isCompletedExceptionally()) t.printStackTrace();
+		});
 	}
 }
@@ -0,0 +1,348 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Downloads a batch of libraries concurrently, bounded by a total thread count and the per-host connection cap from
+ * {@link TransferLimits}, which is scheduled around here rather than waited for.
+ *
+ * <p>Libraries from the Fabric maven are striped across the healthy {@link NotebookService} mirrors in proportion to
+ * their observed throughput, each falling back to the other mirrors if its own fails.
+ */
+public final class DownloadExecutor {
+	private static final int DEFAULT_THREADS = 8;
+
+	private static int threads = DEFAULT_THREADS;
+	private static boolean incremental = true;
+
+	public static void setThreads(int threads) {
+		if (threads < 1) throw new IllegalArgumentException("thread count must be at least 1: " + threads);
+
+		DownloadExecutor.threads = threads;
+	}
+
+	/**
+	 * Set whether libraries already present in the target directory with a matching checksum are kept instead of
+	 * being downloaded again.
+	 */
+	public static void setIncremental(boolean incremental) {
+		DownloadExecutor.incremental = incremental;
+	}
+
+	/**
+	 * Download every library without an input path into libsDir, largest known artifacts first, or extract them from
+	 * the active {@link InstallBundle} or move them from the active {@link InstallPrefetch}.
+	 *
+	 * <p>All downloads are attempted even if some fail, the thrown exception carries each failure as suppressed.
+	 */
+	public static void downloadLibraries(List<Library> libraries, Path libsDir, InstallerProgress progress) throws IOException {
+		List<Library> pending = new ArrayList<>();
+
+		for (Library library : libraries) {
+			if (library.inputPath == null) pending.add(library);
+		}
+
+		if (pending.isEmpty()) return;
+
+		// unknown sizes (-1) sort last, the sort is stable so they keep their original order
+		pending.sort(Comparator.comparingLong((Library library) -> library.size).reversed());
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, pending.size()), new DownloadThreadFactory());
+		CompletionService<Library> completionService = new ExecutorCompletionService<>(executor);
+		Map<Future<Library>, Library> running = new HashMap<>();
+		Map<Future<Library>, String> runningHosts = new HashMap<>();
+		Map<String, Integer> hostConnections = new HashMap<>();
+		List<NotebookService> mirrors = NotebookService.getDownloadServices();
+		int maxPerHost = TransferLimits.getMaxConnectionsPerHost();
+		List<IOException> failures = new ArrayList<>();
+		ByteProgress bytes = new ByteProgress(pending, progress);
+
+		try {
+			while (!pending.isEmpty() || !running.isEmpty()) {
+				// dispatch as many pending downloads as the thread and per-host limits allow
+				for (Iterator<Library> it = pending.iterator(); it.hasNext() && running.size() < threads; ) {
+					Library library = it.next();
+					NotebookService mirror = null;
+					String host;
+
+					if (!mirrors.isEmpty() && library.getURL().startsWith(Reference.FABRIC_MAVEN)) {
+						mirror = pickMirror(mirrors, hostConnections, maxPerHost);
+						if (mirror == null) continue;
+
+						host = getHost(mirror.getMavenUrl());
+					} else {
+						host = getHost(library.getURL());
+						if (hostConnections.getOrDefault(host, 0) >= maxPerHost) continue;
+					}
+
+					NotebookService preferred = mirror;
+					it.remove();
+					hostConnections.merge(host, 1, Integer::sum);
+					Future<Library> future = completionService.submit(() -> {
+						Path file = libsDir.resolve(library.getPath());
+						ByteProgress.Listener listener = bytes.new Listener(library);
+						downloadLibrary(library, file, preferred, progress, listener);
+						listener.complete(file);
+						return library;
+					});
+					running.put(future, library);
+					runningHosts.put(future, host);
+				}
+
+				Future<Library> done = completionService.take();
+				Library library = running.remove(done);
+				hostConnections.merge(runningHosts.remove(done), -1, Integer::sum);
+
+				try {
+					done.get();
+				} catch (ExecutionException e) {
+					System.out.println("library "+library.name+" failed: "+e.getCause());
+
+					failures.add(new IOException("Failed to download " + library.name, e.getCause()));
+				}
+			}
+		} catch (InterruptedException e) {
+			InterruptedIOException iioe = new InterruptedIOException("library download interrupted");
+			iioe.initCause(e);
+			throw iioe;
+		} finally {
+			executor.shutdownNow();
+			awaitWorkers(executor);
+		}
+
+		if (!failures.isEmpty()) {
+			IOException exc = new IOException("Failed to download " + failures.size() + " libraries");
+			failures.forEach(exc::addSuppressed);
+			throw exc;
+		}
+	}
+
+	/**
+	 * Wait for the download threads to stop, so nothing writes into the libraries directory once the batch returned.
+	 *
+	 * <p>Reads blocked on a connection don't react to the interrupt from shutdownNow, they end with the read timeout or
+	 * stall detection at the latest. The caller's interrupt status is kept.
+	 */
+	private static void awaitWorkers(ExecutorService executor) {
+		boolean interrupted = Thread.interrupted();
+
+		try {
+			while (true) {
+				try {
+					if (executor.awaitTermination(1, TimeUnit.MINUTES)) return;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			if (interrupted) Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Pick the mirror whose share of the running downloads is furthest below its share of the total throughput,
+	 * skipping mirrors whose host is at the connection cap.
+	 */
+	static NotebookService pickMirror(List<NotebookService> mirrors, Map<String, Integer> hostConnections, int maxPerHost) {
+		NotebookService ret = null;
+		double best = Double.MAX_VALUE;
+
+		for (NotebookService mirror : mirrors) {
+			int connections = hostConnections.getOrDefault(getHost(mirror.getMavenUrl()), 0);
+			if (connections >= maxPerHost) continue;
+
+			// benched mirrors have no weight and only get picked once every other host is busy
+			double load = (connections + 1) / Math.max(MirrorHealth.getDownloadWeight(mirror), 1);
+
+			if (load < best) {
+				ret = mirror;
+				best = load;
+			}
+		}
+
+		return ret;
+	}
+
+	private static void downloadLibrary(Library library, Path file, NotebookService mirror, InstallerProgress progress, FileDownloader.ProgressListener listener) throws IOException {
+		InstallBundle bundle = InstallBundle.getActive();
+
+		if (bundle != null) {
+			String entry = InstallBundle.getLibraryEntry(library);
+
+			if (incremental && bundle.matches(entry, file)) {
+				progress.updateProgress(new MessageFormat(Utils.BUNDLE.getString("progress.library.present")).format(new Object[]{library.name}));
+			} else {
+				progress.updateProgress(new MessageFormat(Utils.BUNDLE.getString("progress.extract.library.entry")).format(new Object[]{library.name}));
+				bundle.extract(entry, file);
+			}
+
+			return;
+		}
+
+		InstallPrefetch prefetch = InstallPrefetch.getActive();
+
+		if (prefetch != null && prefetch.commit(library, file)) {
+			progress.updateProgress(new MessageFormat(Utils.BUNDLE.getString("progress.library.prefetched")).format(new Object[]{library.name}));
+			return;
+		}
+
+		if (incremental && isPresent(library, file)) {
+			progress.updateProgress(new MessageFormat(Utils.BUNDLE.getString("progress.library.present")).format(new Object[]{library.name}));
+			return;
+		}
+
+		progress.updateProgress(new MessageFormat(Utils.BUNDLE.getString("progress.download.library.entry")).format(new Object[]{library.name}));
+		RetryPolicy.run(library.name, progress, () -> {
+			ArtifactCache.fetch(library.getPath(), library.sha1, file,
+					out -> NotebookService.downloadSubstitutedMaven(library.getURL(), out, library.size, library.sha1, mirror, listener));
+			return null;
+		});
+	}
+
+	/**
+	 * Check whether file already holds the library, comparing its hash against the sha1 from the profile json,
+	 * the one recorded by the artifact cache or, failing both, the checksum files published next to it on the maven.
+	 */
+	static boolean isPresent(Library library, Path file) throws IOException {
+		if (!Files.isRegularFile(file)) return false;
+		if (library.size >= 0 && Files.size(file) != library.size) return false;
+
+		String sha1 = library.sha1 != null ? library.sha1 : ArtifactCache.getIndexedSha1(library.getPath());
+
+		if (sha1 != null) {
+			return Utils.sha1String(file).equalsIgnoreCase(sha1);
+		}
+
+		for (String algorithm : new String[] {"sha1", "sha256"}) {
+			String checksum;
+
+			try {
+				checksum = NotebookService.readStringSubstitutedMaven(library.getURL() + "." + algorithm).trim();
+			} catch (IOException e) {
+				continue; // not published, try the next algorithm
+			}
+
+			// some repositories append the file name after the hash
+			int end = checksum.indexOf(' ');
+			if (end >= 0) checksum = checksum.substring(0, end);
+
+			String actual = algorithm.equals("sha1") ? Utils.sha1String(file) : Utils.bytesToHex(Utils.digest(file, "SHA-256"));
+
+			return actual.equalsIgnoreCase(checksum);
+		}
+
+		return false;
+	}
+
+	private static String getHost(String url) {
+		try {
+			return new URL(url).getHost();
+		} catch (MalformedURLException e) {
+			return url;
+		}
+	}
+
+	/**
+	 * Byte counters of a batch. Libraries of unknown size add to the total as their bytes arrive, and those that
+	 * weren't downloaded count once they are in place.
+	 */
+	private static final class ByteProgress {
+		private final InstallerProgress progress;
+		private final AtomicLong done = new AtomicLong();
+		private final AtomicLong total = new AtomicLong();
+
+		ByteProgress(List<Library> libraries, InstallerProgress progress) {
+			this.progress = progress;
+
+			for (Library library : libraries) {
+				if (library.size >= 0) total.addAndGet(library.size);
+			}
+		}
+
+		private void add(Library library, long bytes) {
+			if (bytes == 0) return;
+
+			long total = library.size < 0 ? this.total.addAndGet(bytes) : this.total.get();
+			progress.updateBytes(done.addAndGet(bytes), total);
+		}
+
+		final class Listener implements FileDownloader.ProgressListener {
+			private final Library library;
+			private final AtomicLong counted = new AtomicLong();
+
+			Listener(Library library) {
+				this.library = library;
+			}
+
+			@Override
+			public void update(long downloaded, long size) {
+				// a retry or another mirror starts counting again, which takes the discarded bytes back off
+				add(library, downloaded - counted.getAndSet(downloaded));
+			}
+
+			void complete(Path file) throws IOException {
+				long size = Files.size(file);
+				add(library, size - counted.getAndSet(size));
+			}
+		}
+	}
+
+	private static final class DownloadThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "Library Download " + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	private DownloadExecutor() { }
+}
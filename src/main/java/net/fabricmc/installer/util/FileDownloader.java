@@ -0,0 +1,585 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared download primitive: streams into a temporary file while hashing it, verifies the digest and commits the file
+ * with an atomic move. Partial downloads of artifacts with a known size and hash survive failures, so the next attempt
+ * continues where the previous one stopped through HTTP Range requests.
+ *
+ * <p>Files above the segment threshold are split into byte ranges that are fetched over parallel connections and
+ * written at their offsets, unless the server doesn't support ranges.
+ */
+public final class FileDownloader {
+	private static final String SIDECAR_SUFFIX = ".part";
+
+	private static int segments = 4;
+	private static long segmentThreshold = 8 * 1024 * 1024;
+	private static long minBytesPerSecond = 10 * 1024;
+	private static int stallWindowSeconds = 15;
+	private static ScheduledExecutorService stallExecutor;
+	private static final SingleFlight<Path, String> inFlight = new SingleFlight<>();
+
+	public static void setSegments(int segments) {
+		if (segments < 1) throw new IllegalArgumentException("segment count must be at least 1: " + segments);
+
+		FileDownloader.segments = segments;
+	}
+
+	public static void setSegmentThreshold(long bytes) {
+		FileDownloader.segmentThreshold = bytes;
+	}
+
+	/**
+	 * Abort connections whose throughput stays below minBytesPerSecond for the stall window, 0 disables the check.
+	 *
+	 * <p>Verified downloads keep what they received, so a fallback continues from there on the next mirror.
+	 */
+	public static void setMinSpeed(long minBytesPerSecond) {
+		if (minBytesPerSecond < 0) throw new IllegalArgumentException("negative minimum speed: " + minBytesPerSecond);
+
+		FileDownloader.minBytesPerSecond = minBytesPerSecond;
+	}
+
+	/**
+	 * Set how long a connection may stay below the minimum speed before it is aborted.
+	 */
+	public static void setStallWindow(int seconds) {
+		if (seconds < 1) throw new IllegalArgumentException("stall window must be at least 1 second: " + seconds);
+
+		FileDownloader.stallWindowSeconds = seconds;
+	}
+
+	/**
+	 * Download url to target, verifying it while the bytes are written and moving it into place atomically.
+	 *
+	 * <p>The file is first written to a .tmp sibling. If size and hash are known, a failed download keeps that
+	 * partial file together with a .part sidecar and the next call for the same artifact resumes it.
+	 *
+	 * <p>Concurrent calls for the same target share one download, since they would write the same .tmp file.
+	 *
+	 * @param size expected size in bytes or -1 if unknown
+	 * @param hash expected SHA-1 or SHA-256 hex string (told apart by length) or null if unknown
+	 * @return the SHA-1 hex string of the downloaded file
+	 */
+	public static String download(URL url, Path target, long size, String hash, ProgressListener progress) throws IOException {
+		return inFlight.get(target.toAbsolutePath().normalize(), () -> downloadUnshared(url, target, size, hash, progress));
+	}
+
+	private static String downloadUnshared(URL url, Path target, long size, String hash, ProgressListener progress) throws IOException {
+		Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+		Path sidecar = tmp.resolveSibling(tmp.getFileName() + SIDECAR_SUFFIX);
+		Hasher hasher = new Hasher(hash);
+		Files.createDirectories(target.getParent());
+
+		if (size < 0 || hash == null) {
+			// without knowing the complete file there is nothing to validate a partial one against
+			try {
+				downloadStream(url, tmp, hasher, progress);
+			} catch (Throwable t) {
+				try {
+					Files.deleteIfExists(tmp);
+				} catch (Throwable t2) {
+					t.addSuppressed(t2);
+				}
+
+				throw t;
+			}
+		} else {
+			downloadResumable(url, tmp, sidecar, size, hash, hasher, progress);
+		}
+
+		if (hash != null && !hasher.matches(hash)) {
+			Files.deleteIfExists(tmp);
+			Files.deleteIfExists(sidecar);
+			throw new IOException("Failed to validate download of "+url+": expected "+hash+", got "+hasher.getExpectedHex());
+		}
+
+		Files.deleteIfExists(sidecar);
+		moveAtomic(tmp, target);
+
+		return hasher.getSha1Hex();
+	}
+
+	private static void downloadStream(URL url, Path tmp, Hasher hasher, ProgressListener progress) throws IOException {
+		long size;
+		Segment segment = new Segment(0, 0, Long.MAX_VALUE);
+
+		try (HttpTransport.Response response = Utils.openHttp(url, Collections.emptyMap());
+				FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			int responseCode = response.getStatus();
+			if (responseCode < 200 || responseCode >= 300) throw new HttpStatusException(url, responseCode);
+
+			size = response.getContentLength();
+			transfer(response, channel, segment, hasher, new AtomicLong(), size, progress);
+		}
+
+		if (size >= 0 && segment.pos != size) {
+			throw new IOException("Download of "+url+" ended early after "+segment.pos+" of "+size+" bytes");
+		}
+	}
+
+	private static void downloadResumable(URL url, Path tmp, Path sidecar, long size, String hash, Hasher hasher, ProgressListener progress) throws IOException {
+		List<Segment> state = readState(tmp, sidecar, size, hash);
+
+		if (state == null) {
+			Files.deleteIfExists(tmp);
+			state = planSegments(size);
+			writeState(sidecar, size, hash, state);
+		}
+
+		try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			download(url, channel, state, size, hasher, progress);
+		} finally {
+			writeState(sidecar, size, hash, state);
+		}
+
+		for (Segment segment : state) {
+			if (segment.pos < segment.end) {
+				// keep the partial file for the next attempt
+				throw new IOException("Download of "+url+" ended early, "+segment.pos+" of "+segment.end+" bytes of a segment received");
+			}
+		}
+
+		if (Files.size(tmp) != size) {
+			Files.deleteIfExists(tmp);
+			Files.deleteIfExists(sidecar);
+			throw new IOException("Failed to validate download of "+url+": expected "+size+" bytes, got "+Files.size(tmp));
+		}
+	}
+
+	private static void moveAtomic(Path source, Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	public interface ProgressListener {
+		void update(long downloaded, long total);
+
+		/**
+		 * Called with every chunk received over the network, unlike downloaded this excludes resumed bytes.
+		 */
+		default void received(int bytes) { }
+	}
+
+	/**
+	 * Fetch all incomplete segments. The hasher sees the file in order: the already written prefix is read back from
+	 * disk, the first pending segment is hashed as it streams in and anything after it is read back once complete.
+	 */
+	private static void download(URL url, FileChannel channel, List<Segment> state, long size, Hasher hasher, ProgressListener progress) throws IOException {
+		List<Segment> pending = new ArrayList<>();
+		long done = 0;
+
+		for (Segment segment : state) {
+			done += segment.pos - segment.start;
+			if (segment.pos < segment.end) pending.add(segment);
+		}
+
+		if (pending.isEmpty()) {
+			hashRange(channel, 0, size, hasher);
+			return;
+		}
+
+		AtomicLong downloaded = new AtomicLong(done);
+		Segment first = pending.get(0);
+
+		// closed early on some paths to free the connection, closing it again is a no-op
+		HttpTransport.Response response = openRange(url, first, size);
+
+		try {
+			if (isRanged(first, size) && response.getStatus() != HttpURLConnection.HTTP_PARTIAL) {
+				// anything but the whole file is a failure of this server, keep the partial file for the next attempt
+				if (response.getStatus() != HttpURLConnection.HTTP_OK) throw new HttpStatusException(url, response.getStatus());
+
+				// the server ignored the range, continue as a single stream from the start
+				state.clear();
+				state.add(new Segment(0, 0, size));
+				channel.truncate(0);
+				downloaded.set(0);
+				transfer(response, channel, state.get(0), hasher, downloaded, size, progress);
+
+				return;
+			}
+
+			checkResponse(url, response, first, size);
+			hashRange(channel, 0, first.pos, hasher);
+
+			if (pending.size() == 1) {
+				transfer(response, channel, first, hasher, downloaded, size, progress);
+				hashRange(channel, first.end, size, hasher);
+				return;
+			}
+
+			// the server honors ranges, fetch the remaining segments over their own connections
+			if (channel.size() < size) channel.write(ByteBuffer.allocate(1), size - 1);
+
+			ExecutorService executor = Executors.newFixedThreadPool(pending.size() - 1, r -> {
+				Thread thread = new Thread(r, "Segment Download");
+				thread.setDaemon(true);
+				return thread;
+			});
+			List<Future<?>> futures = new ArrayList<>();
+			IOException exc = null;
+
+			try {
+				for (Segment segment : pending.subList(1, pending.size())) {
+					futures.add(executor.submit(() -> {
+						try (HttpTransport.Response segmentResponse = openRange(url, segment, size)) {
+							checkResponse(url, segmentResponse, segment, size);
+							transfer(segmentResponse, channel, segment, null, downloaded, size, progress);
+						}
+
+						return null;
+					}));
+				}
+
+				try {
+					transfer(response, channel, first, hasher, downloaded, size, progress);
+				} catch (IOException e) {
+					exc = e;
+				}
+
+				// the segment threads may be waiting for this connection under a tight per-host limit
+				response.close();
+
+				for (Future<?> future : futures) {
+					try {
+						future.get();
+					} catch (ExecutionException e) {
+						IOException failure = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+
+						if (exc == null) {
+							exc = failure;
+						} else {
+							exc.addSuppressed(failure);
+						}
+					} catch (InterruptedException e) {
+						throw new IOException("segmented download interrupted", e);
+					}
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+
+			if (exc != null) throw exc;
+		} finally {
+			response.close();
+		}
+
+		hashRange(channel, first.end, size, hasher);
+	}
+
+	private static void hashRange(FileChannel channel, long from, long to, Hasher hasher) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+		long pos = from;
+
+		while (pos < to) {
+			buffer.clear();
+			buffer.limit((int) Math.min(buffer.capacity(), to - pos));
+			int len = channel.read(buffer, pos);
+			if (len < 0) throw new IOException("file ended at "+pos+" while hashing up to "+to);
+
+			hasher.update(buffer.array(), 0, len);
+			pos += len;
+		}
+	}
+
+	private static boolean isRanged(Segment segment, long size) {
+		return segment.pos > 0 || segment.end < size;
+	}
+
+	private static HttpTransport.Response openRange(URL url, Segment segment, long size) throws IOException {
+		if (!isRanged(segment, size)) return Utils.openHttp(url, Collections.emptyMap());
+
+		return Utils.openHttp(url, Collections.singletonMap("Range", "bytes=" + segment.pos + "-" + (segment.end - 1)));
+	}
+
+	private static void checkResponse(URL url, HttpTransport.Response response, Segment segment, long size) throws IOException {
+		int responseCode = response.getStatus();
+
+		if (isRanged(segment, size)) {
+			if (responseCode != HttpURLConnection.HTTP_PARTIAL || getContentRangeStart(response) != segment.pos) {
+				throw new IOException("HTTP request to "+url+" returned an unexpected range: "+responseCode+" "+response.getHeader("Content-Range"));
+			}
+		} else if (responseCode < 200 || responseCode >= 300) {
+			throw new HttpStatusException(url, responseCode);
+		}
+	}
+
+	private static void transfer(HttpTransport.Response response, FileChannel channel, Segment segment, Hasher hasher, AtomicLong downloaded, long size, ProgressListener progress) throws IOException {
+		InputStream is = response.getBody();
+		StallWatch watch = minBytesPerSecond > 0 ? new StallWatch(response) : null;
+		byte[] buffer = new byte[64 * 1024];
+		int len;
+
+		try {
+			while (segment.pos < segment.end && (len = is.read(buffer, 0, (int) Math.min(buffer.length, segment.end - segment.pos))) >= 0) {
+				ByteBuffer bb = ByteBuffer.wrap(buffer, 0, len);
+
+				while (bb.hasRemaining()) {
+					channel.write(bb, segment.pos + bb.position());
+				}
+
+				if (hasher != null) hasher.update(buffer, 0, len);
+
+				segment.pos += len;
+				long total = downloaded.addAndGet(len);
+
+				if (watch != null) watch.received = segment.pos;
+				if (progress != null) {
+					progress.received(len);
+					progress.update(total, size);
+				}
+			}
+
+			if (watch != null && watch.stalled) throw createStallException(null); // the abort may look like the end of the body
+		} catch (IOException e) {
+			if (watch != null && watch.stalled) throw createStallException(e);
+
+			throw e;
+		} finally {
+			if (watch != null) watch.stop();
+		}
+	}
+
+	private static IOException createStallException(IOException cause) {
+		return new IOException("Download stalled below "+minBytesPerSecond+" bytes/s for "+stallWindowSeconds+" s", cause);
+	}
+
+	private static List<Segment> planSegments(long size) {
+		List<Segment> ret = new ArrayList<>();
+		int count = size >= segmentThreshold ? segments : 1;
+		long segmentSize = (size + count - 1) / count;
+
+		for (long start = 0; start < size || ret.isEmpty(); start += segmentSize) {
+			ret.add(new Segment(start, start, Math.min(start + segmentSize, size)));
+		}
+
+		return ret;
+	}
+
+	private static List<Segment> readState(Path tmp, Path sidecar, long size, String hash) throws IOException {
+		if (!Files.exists(tmp)) return null;
+
+		Properties properties = new Properties();
+
+		try (InputStream is = Files.newInputStream(sidecar)) {
+			properties.load(is);
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+
+		if (!Long.toString(size).equals(properties.getProperty("size"))
+				|| !hash.equalsIgnoreCase(properties.getProperty("hash"))) {
+			return null; // partial file of a different artifact
+		}
+
+		List<Segment> ret = new ArrayList<>();
+		String count = properties.getProperty("segments");
+
+		if (count == null || count.equals("1")) { // single stream, the file length is the resume offset
+			long offset = Files.size(tmp);
+			if (offset > size) return null;
+
+			ret.add(new Segment(0, offset, size));
+			return ret;
+		}
+
+		try {
+			for (int i = 0; i < Integer.parseInt(count); i++) {
+				String[] parts = properties.getProperty("segment." + i, "").split(",");
+				Segment segment = new Segment(Long.parseLong(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+				if (segment.pos < segment.start || segment.pos > segment.end || segment.end > size) return null;
+
+				ret.add(segment);
+			}
+		} catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+			return null;
+		}
+
+		return ret;
+	}
+
+	private static void writeState(Path sidecar, long size, String hash, List<Segment> state) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty("size", Long.toString(size));
+		properties.setProperty("hash", hash);
+		properties.setProperty("segments", Integer.toString(state.size()));
+
+		for (int i = 0; i < state.size(); i++) {
+			Segment segment = state.get(i);
+			properties.setProperty("segment." + i, segment.start + "," + segment.pos + "," + segment.end);
+		}
+
+		try (OutputStream os = Files.newOutputStream(sidecar)) {
+			properties.store(os, null);
+		}
+	}
+
+	private static long getContentRangeStart(HttpTransport.Response response) {
+		// Content-Range: bytes <start>-<end>/<size>
+		String contentRange = response.getHeader("Content-Range");
+		if (contentRange == null || !contentRange.startsWith("bytes ")) return -1;
+
+		int end = contentRange.indexOf('-');
+		if (end < 0) return -1;
+
+		try {
+			return Long.parseLong(contentRange.substring("bytes ".length(), end).trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Computes the SHA-1 of the data, and the SHA-256 as well if that is what the expected hash is.
+	 */
+	private static final class Hasher {
+		private final MessageDigest sha1 = Utils.createDigest("SHA-1");
+		private final MessageDigest sha256;
+		private String sha1Hex;
+		private String expectedHex;
+
+		Hasher(String hash) {
+			sha256 = hash != null && hash.length() == 64 ? Utils.createDigest("SHA-256") : null;
+		}
+
+		void update(byte[] data, int offset, int len) {
+			sha1.update(data, offset, len);
+			if (sha256 != null) sha256.update(data, offset, len);
+		}
+
+		String getSha1Hex() {
+			if (sha1Hex == null) sha1Hex = Utils.bytesToHex(sha1.digest());
+
+			return sha1Hex;
+		}
+
+		String getExpectedHex() {
+			if (expectedHex == null) expectedHex = sha256 != null ? Utils.bytesToHex(sha256.digest()) : getSha1Hex();
+
+			return expectedHex;
+		}
+
+		boolean matches(String hash) {
+			return getExpectedHex().equalsIgnoreCase(hash);
+		}
+	}
+
+	private static synchronized ScheduledExecutorService getStallExecutor() {
+		if (stallExecutor == null) {
+			stallExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "Download stall watch");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+
+		return stallExecutor;
+	}
+
+	/**
+	 * Samples the received byte count once a second and aborts the response once less than the minimum arrived
+	 * within the window, which also catches a read that blocks without any data.
+	 */
+	private static final class StallWatch implements Runnable {
+		private final HttpTransport.Response response;
+		private final long[] history = new long[stallWindowSeconds];
+		private final ScheduledFuture<?> future;
+		private int ticks;
+		volatile long received;
+		volatile boolean stalled;
+
+		StallWatch(HttpTransport.Response response) {
+			this.response = response;
+			this.future = getStallExecutor().scheduleAtFixedRate(this, 1, 1, TimeUnit.SECONDS);
+		}
+
+		@Override
+		public void run() {
+			long current = received;
+			int slot = ticks++ % history.length;
+			// a bandwidth limit can push throughput below the floor on its own, don't mistake that for a stall
+			long floor = Math.min(minBytesPerSecond, TransferLimits.getBandwidthShare() / 2);
+
+			if (ticks > history.length && current - history[slot] < floor * history.length) {
+				stalled = true;
+				stop();
+				response.abort();
+				return;
+			}
+
+			history[slot] = current;
+		}
+
+		void stop() {
+			future.cancel(false);
+		}
+	}
+
+	private static final class Segment {
+		final long start;
+		final long end; // exclusive
+		volatile long pos;
+
+		Segment(long start, long pos, long end) {
+			this.start = start;
+			this.pos = pos;
+			this.end = end;
+		}
+	}
+
+	private FileDownloader() { }
+}
@@ -0,0 +1,227 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ * On-disk cache for small HTTP GET responses such as meta json, revalidated with ETag / Last-Modified.
+ *
+ * <p>Entries live in the http directory of the {@link ArtifactCache}, and the cache is disabled together with it.
+ */
+public final class HttpCache {
+	private static final SingleFlight<String, String> inFlight = new SingleFlight<>();
+	private static long maxAgeMs = 0;
+
+	/**
+	 * Set how long a cached response is served without asking the server, 0 always revalidates.
+	 */
+	public static void setMaxAge(long seconds) {
+		if (seconds < 0) throw new IllegalArgumentException("negative max age: " + seconds);
+
+		maxAgeMs = seconds * 1000;
+	}
+
+	/**
+	 * Read url as a string through the cache, concurrent calls for the same url share one lookup and request.
+	 */
+	public static String readString(URL url) throws IOException {
+		return inFlight.get(url.toString(), () -> read(url, Utils::readString));
+	}
+
+	/**
+	 * Read url through the cache, handing the body to reader as a stream so it never has to be held in memory whole.
+	 */
+	public static <T> T read(URL url, Utils.BodyReader<T> reader) throws IOException {
+		Path cacheDir = ArtifactCache.getCacheDir();
+		if (cacheDir == null) return Utils.read(url, reader);
+
+		Path dir = cacheDir.resolve("http");
+		Path metaFile = dir.resolve(Utils.bytesToHex(Utils.sha1(url.toString().getBytes(StandardCharsets.UTF_8))) + ".properties");
+		Properties meta = readMetaOrNull(metaFile); // an unreadable entry is a miss
+		Path body = meta != null ? getBody(dir, meta) : null;
+		long fetched = body != null ? getFetched(meta) : -1;
+
+		if (fetched < 0) {
+			// a damaged entry is fetched again as if there was none, store replaces it
+			body = null;
+		} else if (System.currentTimeMillis() - fetched < maxAgeMs) {
+			return readBody(url, body, reader);
+		}
+
+		Map<String, String> headers = new HashMap<>(Utils.ACCEPT_GZIP);
+
+		if (body != null) {
+			if (meta.getProperty("etag") != null) headers.put("If-None-Match", meta.getProperty("etag"));
+			if (meta.getProperty("last-modified") != null) headers.put("If-Modified-Since", meta.getProperty("last-modified"));
+		}
+
+		try (HttpTransport.Response response = Utils.openHttp(url, headers)) {
+			int responseCode = response.getStatus();
+
+			if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && body != null) {
+				touch(url, metaFile, meta.getProperty("body"));
+			} else {
+				if (responseCode < 200 || responseCode >= 300) throw new HttpStatusException(url, responseCode);
+
+				String etag = response.getHeader("ETag");
+				String lastModified = response.getHeader("Last-Modified");
+
+				if (etag == null && lastModified == null && maxAgeMs <= 0) {
+					return reader.read(Utils.getBody(response));
+				}
+
+				body = store(url, dir, metaFile, Utils.getBody(response), etag, lastModified);
+			}
+		}
+
+		return readBody(url, body, reader);
+	}
+
+	private static <T> T readBody(URL url, Path body, Utils.BodyReader<T> reader) throws IOException {
+		try (InputStream is = Files.newInputStream(body)) {
+			return reader.read(is);
+		} catch (NoSuchFileException e) {
+			// replaced by a concurrent refresh in the meantime, don't bother finding the new one
+			return Utils.read(url, reader);
+		}
+	}
+
+	private static Path store(URL url, Path dir, Path metaFile, InputStream is, String etag, String lastModified) throws IOException {
+		Files.createDirectories(dir);
+
+		// bodies get unique names so a concurrent writer can never pair one response's validators with another's body
+		String bodyName = metaFile.getFileName().toString().replace(".properties", "-" + UUID.randomUUID() + ".body");
+		Path body = dir.resolve(bodyName);
+
+		long size;
+
+		try {
+			size = Files.copy(is, body);
+		} catch (IOException e) {
+			Files.deleteIfExists(body);
+			throw e;
+		}
+
+		Properties meta = new Properties();
+		meta.setProperty("body", bodyName);
+		meta.setProperty("fetched", Long.toString(System.currentTimeMillis()));
+		if (etag != null) meta.setProperty("etag", etag);
+		if (lastModified != null) meta.setProperty("last-modified", lastModified);
+
+		// the body to replace is the one the meta names now, a concurrent store may have swapped it since it was read
+		ArtifactCache.withLock(getLockKey(url), () -> {
+			Properties oldMeta = readMetaOrNull(metaFile);
+			writeMeta(metaFile, meta);
+
+			if (oldMeta != null && oldMeta.getProperty("body") != null) {
+				Files.deleteIfExists(dir.resolve(oldMeta.getProperty("body")));
+			}
+		});
+
+		ArtifactCache.recordWrite(size);
+
+		return body;
+	}
+
+	/**
+	 * Mark the entry as fetched now, unless a concurrent store replaced its body in the meantime.
+	 */
+	private static void touch(URL url, Path metaFile, String bodyName) throws IOException {
+		ArtifactCache.withLock(getLockKey(url), () -> {
+			Properties meta = readMetaOrNull(metaFile);
+			if (meta == null || !bodyName.equals(meta.getProperty("body"))) return;
+
+			meta.setProperty("fetched", Long.toString(System.currentTimeMillis()));
+			writeMeta(metaFile, meta);
+		});
+	}
+
+	private static String getLockKey(URL url) {
+		return "http|" + url;
+	}
+
+	private static long getFetched(Properties meta) {
+		try {
+			return Long.parseLong(meta.getProperty("fetched", ""));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private static Properties readMetaOrNull(Path metaFile) {
+		try {
+			return readMeta(metaFile);
+		} catch (IOException | IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	private static Properties readMeta(Path metaFile) throws IOException {
+		Properties meta = new Properties();
+
+		try (InputStream is = Files.newInputStream(metaFile)) {
+			meta.load(is);
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+
+		return meta;
+	}
+
+	private static Path getBody(Path dir, Properties meta) {
+		String bodyName = meta.getProperty("body");
+		if (bodyName == null) return null;
+
+		Path ret = dir.resolve(bodyName);
+
+		return Files.isRegularFile(ret) ? ret : null;
+	}
+
+	private static void writeMeta(Path metaFile, Properties meta) throws IOException {
+		Path tmp = metaFile.resolveSibling(metaFile.getFileName() + "." + UUID.randomUUID() + ".tmp");
+
+		try (OutputStream os = Files.newOutputStream(tmp)) {
+			meta.store(os, null);
+		}
+
+		Files.move(tmp, metaFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private HttpCache() { }
+}
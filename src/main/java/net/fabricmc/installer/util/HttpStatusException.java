@@ -0,0 +1,54 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer.util;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * Thrown when a HTTP request completes with a non-2xx status.
+ */
+public class HttpStatusException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	public final int status;
+
+	public HttpStatusException(URL url, int status) {
+		this("HTTP request to "+url+" failed: "+status, status);
+	}
+
+	public HttpStatusException(String message, int status) {
+		super(message);
+
+		this.status = status;
+	}
+
+	/**
+	 * Whether the server answered that the resource doesn't exist, rather than failing to serve it.
+	 */
+	public boolean isNotFound() {
+		return status == 404 || status == 410;
+	}
+}
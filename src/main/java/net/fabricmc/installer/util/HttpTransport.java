@@ -0,0 +1,85 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * Sends the installer's HTTP requests, see {@link Utils#setHttpTransport}.
+ *
+ * <p>Implementations are expected to keep connections alive and reuse them for further requests to the same host
+ * once a response was read completely and closed.
+ */
+public interface HttpTransport {
+	/**
+	 * Send a GET request. Redirects are followed, other non-2xx responses are returned as is.
+	 *
+	 * @param headers additional request headers
+	 */
+	Response get(URL url, Map<String, String> headers) throws IOException;
+
+	interface Response extends Closeable {
+		int getStatus();
+
+		/**
+		 * Get the first value of a response header by its case insensitive name, or null if absent.
+		 */
+		String getHeader(String name);
+
+		/**
+		 * Get the body length from the Content-Length header, or -1 if unknown.
+		 */
+		default long getContentLength() {
+			String value = getHeader("Content-Length");
+			if (value == null) return -1;
+
+			try {
+				return Long.parseLong(value.trim());
+			} catch (NumberFormatException e) {
+				return -1;
+			}
+		}
+
+		/**
+		 * Get the raw body, without decoding any Content-Encoding.
+		 */
+		InputStream getBody() throws IOException;
+
+		/**
+		 * Abort the request from any thread, making pending and later reads of the body fail.
+		 */
+		void abort();
+
+		/**
+		 * Release the response. The connection is only reused if the body was read completely or is small.
+		 */
+		@Override
+		void close() throws IOException;
+	}
+}
@@ -0,0 +1,322 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import mjson.Json;
+
+/**
+ * Zip archive holding everything a single install needs, so it can run on a machine without network access.
+ *
+ * <p>The bundle.json index records the side and versions the bundle was resolved for and the size and SHA-1 of every
+ * entry. Meta responses live under meta/, libraries under libraries/ and the Minecraft server jar under minecraft/.
+ * Entries are looked up through the zip's central directory, so an install only reads the entries it needs, and each
+ * one is verified against the index while it is read.
+ *
+ * <p>While a bundle is {@link #setActive active}, meta queries and library and server jar downloads are served from it.
+ */
+public final class InstallBundle implements Closeable {
+	private static final String INDEX = "bundle.json";
+	private static final int FORMAT_VERSION = 1;
+
+	private static volatile InstallBundle active;
+
+	public final String side;
+	public final String loaderVersion;
+	public final String gameVersion;
+
+	private final Path path;
+	private final ZipFile zip;
+	private final Map<String, Entry> entries = new HashMap<>();
+
+	public static InstallBundle open(Path path) throws IOException {
+		return new InstallBundle(path);
+	}
+
+	/**
+	 * Set the bundle to install from instead of the network, or null to go back to the network.
+	 */
+	public static void setActive(InstallBundle bundle) {
+		active = bundle;
+	}
+
+	public static InstallBundle getActive() {
+		return active;
+	}
+
+	/**
+	 * Start writing a bundle, which only appears at output once {@link Writer#finish} succeeded.
+	 */
+	public static Writer create(Path output, String side, String loaderVersion, String gameVersion) throws IOException {
+		return new Writer(output, side, loaderVersion, gameVersion);
+	}
+
+	public static String getMetaEntry(String metaPath) {
+		return "meta/" + metaPath;
+	}
+
+	public static String getLibraryEntry(Library library) {
+		return "libraries/" + library.getPath().replace(File.separatorChar, '/');
+	}
+
+	public static String getServerEntry(String gameVersion) {
+		return "minecraft/server-" + gameVersion + ".jar";
+	}
+
+	private InstallBundle(Path path) throws IOException {
+		this.path = path;
+		this.zip = new ZipFile(path.toFile());
+
+		try {
+			ZipEntry indexEntry = zip.getEntry(INDEX);
+			if (indexEntry == null) throw new IOException(path+" is not an install bundle, "+INDEX+" is missing");
+
+			Json index;
+
+			try (InputStream is = zip.getInputStream(indexEntry)) {
+				index = Json.read(Utils.readString(is));
+			}
+
+			int format = index.at("format").asInteger();
+			if (format > FORMAT_VERSION) throw new IOException("Install bundle "+path+" uses the newer format "+format+", update the installer");
+
+			side = index.at("side").asString();
+			loaderVersion = index.at("loader").asString();
+			gameVersion = index.at("game").asString();
+
+			for (Map.Entry<String, Json> entry : index.at("entries").asJsonMap().entrySet()) {
+				entries.put(entry.getKey(), new Entry(entry.getValue().at("size").asLong(), entry.getValue().at("sha1").asString()));
+			}
+		} catch (IOException | RuntimeException e) {
+			try {
+				zip.close();
+			} catch (IOException e2) {
+				e.addSuppressed(e2);
+			}
+
+			throw e;
+		}
+	}
+
+	public boolean has(String name) {
+		return entries.containsKey(name);
+	}
+
+	/**
+	 * Read an entry as a string, verifying it against the index.
+	 */
+	public String readString(String name) throws IOException {
+		Entry entry = getEntry(name);
+		MessageDigest digest = Utils.createDigest("SHA-1");
+		ByteArrayOutputStream data = new ByteArrayOutputStream((int) entry.size);
+
+		try (InputStream is = zip.getInputStream(zip.getEntry(name))) {
+			byte[] buffer = new byte[64 * 1024];
+			int len;
+
+			while ((len = is.read(buffer)) >= 0) {
+				digest.update(buffer, 0, len);
+				data.write(buffer, 0, len);
+			}
+		}
+
+		verify(name, entry, data.size(), digest);
+
+		return new String(data.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Check whether file already holds the given entry.
+	 */
+	public boolean matches(String name, Path file) throws IOException {
+		Entry entry = getEntry(name);
+
+		return Files.isRegularFile(file) && Files.size(file) == entry.size && Utils.sha1String(file).equalsIgnoreCase(entry.sha1);
+	}
+
+	/**
+	 * Extract an entry to target, verifying it while it is written and moving it into place atomically.
+	 */
+	public void extract(String name, Path target) throws IOException {
+		Entry entry = getEntry(name);
+		Path tmp = target.resolveSibling(target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+		MessageDigest digest = Utils.createDigest("SHA-1");
+		long size = 0;
+		Files.createDirectories(target.getParent());
+
+		try {
+			try (InputStream is = zip.getInputStream(zip.getEntry(name));
+					OutputStream os = Files.newOutputStream(tmp)) {
+				byte[] buffer = new byte[64 * 1024];
+				int len;
+
+				while ((len = is.read(buffer)) >= 0) {
+					digest.update(buffer, 0, len);
+					os.write(buffer, 0, len);
+					size += len;
+				}
+			}
+
+			verify(name, entry, size, digest);
+
+			try {
+				Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	private Entry getEntry(String name) throws FileNotFoundException {
+		Entry entry = entries.get(name);
+		if (entry == null || zip.getEntry(name) == null) throw new FileNotFoundException(name+" is not in install bundle "+path);
+
+		return entry;
+	}
+
+	private void verify(String name, Entry entry, long size, MessageDigest digest) throws IOException {
+		String sha1 = Utils.bytesToHex(digest.digest());
+
+		if (size != entry.size || !sha1.equalsIgnoreCase(entry.sha1)) {
+			throw new IOException("Entry "+name+" of install bundle "+path+" is corrupt: expected "+entry.sha1+" ("+entry.size+" bytes), got "+sha1+" ("+size+" bytes)");
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (active == this) active = null;
+
+		zip.close();
+	}
+
+	private static final class Entry {
+		final long size;
+		final String sha1;
+
+		Entry(long size, String sha1) {
+			this.size = size;
+			this.sha1 = sha1;
+		}
+	}
+
+	public static final class Writer implements Closeable {
+		private final Path output;
+		private final Path tmp;
+		private final ZipOutputStream zos;
+		private final Json index;
+		private final Json entries = Json.object();
+		private boolean finished;
+
+		private Writer(Path output, String side, String loaderVersion, String gameVersion) throws IOException {
+			this.output = output.toAbsolutePath();
+			this.tmp = this.output.resolveSibling(this.output.getFileName() + "." + UUID.randomUUID() + ".tmp");
+			this.zos = new ZipOutputStream(Files.newOutputStream(tmp));
+			this.index = Json.object()
+					.set("format", FORMAT_VERSION)
+					.set("side", side)
+					.set("loader", loaderVersion)
+					.set("game", gameVersion)
+					.set("entries", entries);
+		}
+
+		public void add(String name, byte[] data) throws IOException {
+			zos.putNextEntry(new ZipEntry(name));
+			zos.write(data);
+			zos.closeEntry();
+
+			entries.set(name, Json.object().set("size", data.length).set("sha1", Utils.bytesToHex(Utils.sha1(data))));
+		}
+
+		public void add(String name, Path file) throws IOException {
+			MessageDigest digest = Utils.createDigest("SHA-1");
+			long size = 0;
+
+			zos.putNextEntry(new ZipEntry(name));
+
+			try (InputStream is = Files.newInputStream(file)) {
+				byte[] buffer = new byte[64 * 1024];
+				int len;
+
+				while ((len = is.read(buffer)) >= 0) {
+					digest.update(buffer, 0, len);
+					zos.write(buffer, 0, len);
+					size += len;
+				}
+			}
+
+			zos.closeEntry();
+
+			entries.set(name, Json.object().set("size", size).set("sha1", Utils.bytesToHex(digest.digest())));
+		}
+
+		/**
+		 * Write the index and move the bundle into place.
+		 */
+		public void finish() throws IOException {
+			zos.putNextEntry(new ZipEntry(INDEX));
+			zos.write(index.toString().getBytes(StandardCharsets.UTF_8));
+			zos.closeEntry();
+			zos.close();
+
+			Files.move(tmp, output, StandardCopyOption.REPLACE_EXISTING);
+			finished = true;
+		}
+
+		/**
+		 * Discard the bundle unless it was finished.
+		 */
+		@Override
+		public void close() throws IOException {
+			if (finished) return;
+
+			try {
+				zos.close();
+			} finally {
+				Files.deleteIfExists(tmp);
+			}
+		}
+	}
+}
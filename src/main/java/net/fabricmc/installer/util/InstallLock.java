@@ -0,0 +1,172 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import mjson.Json;
+
+/**
+ * Fully resolved install plan: the side, loader and game versions, the loader profile json with the size and SHA-1 of
+ * every library, and the Minecraft server jar download if one was made.
+ *
+ * <p>A {@link Recorder} collects the plan while an install runs normally. While a lock is {@link #setActive active},
+ * the profile and server jar come from it instead of meta, so replaying it makes no meta queries and every download is
+ * verified against the recorded checksums.
+ */
+public final class InstallLock {
+	private static final int FORMAT_VERSION = 1;
+
+	private static volatile InstallLock active;
+	private static volatile Recorder recorder;
+
+	public final String side;
+	public final String loaderVersion;
+	public final String gameVersion;
+
+	private final String metaPath;
+	private final Json profile;
+	private final Json server; // null if the server jar wasn't downloaded
+
+	public static InstallLock read(Path path) throws IOException {
+		Json json = Json.read(Utils.readString(path));
+
+		int format = json.at("format").asInteger();
+		if (format > FORMAT_VERSION) throw new IOException("Lockfile "+path+" uses the newer format "+format+", update the installer");
+
+		return new InstallLock(json.at("side").asString(), json.at("loader").asString(), json.at("game").asString(),
+				json.at("metaPath").asString(), json.at("profile"), json.at("server"));
+	}
+
+	/**
+	 * Set the lock to replay instead of resolving the install through meta, or null to resolve it again.
+	 */
+	public static void setActive(InstallLock lock) {
+		active = lock;
+	}
+
+	public static InstallLock getActive() {
+		return active;
+	}
+
+	/**
+	 * Start recording the plan of the following install.
+	 */
+	public static Recorder startRecording() {
+		Recorder ret = new Recorder();
+		recorder = ret;
+
+		return ret;
+	}
+
+	/**
+	 * Get the recorder of the running install, or null if it isn't recorded.
+	 */
+	public static Recorder getRecorder() {
+		return recorder;
+	}
+
+	private InstallLock(String side, String loaderVersion, String gameVersion, String metaPath, Json profile, Json server) {
+		this.side = side;
+		this.loaderVersion = loaderVersion;
+		this.gameVersion = gameVersion;
+		this.metaPath = metaPath;
+		this.profile = profile;
+		this.server = server;
+	}
+
+	/**
+	 * Get a copy of the locked profile json, which the install must have queried from metaPath.
+	 */
+	public Json getProfile(String metaPath) throws IOException {
+		if (!metaPath.equals(this.metaPath)) throw new IOException("Meta "+metaPath+" isn't part of the lockfile, which pins "+this.metaPath);
+
+		return Json.read(profile.toString());
+	}
+
+	/**
+	 * Get the locked server jar download, or null if the lockfile doesn't have one.
+	 */
+	public VersionMeta.Download getServerDownload() {
+		return server != null ? new VersionMeta.Download(server) : null;
+	}
+
+	public void write(Path path) throws IOException {
+		Json json = Json.object()
+				.set("format", FORMAT_VERSION)
+				.set("side", side)
+				.set("loader", loaderVersion)
+				.set("game", gameVersion)
+				.set("metaPath", metaPath)
+				.set("profile", profile);
+
+		if (server != null) json.set("server", server);
+
+		Utils.writeToFile(path, json.toString());
+	}
+
+	public static final class Recorder {
+		private InstallLock lock;
+		private Json server;
+
+		/**
+		 * Record the resolved profile once its libraries were downloaded to libsDir, adding the size and SHA-1 of those
+		 * the profile doesn't list them for.
+		 */
+		public synchronized void recordProfile(String side, String loaderVersion, String gameVersion, String metaPath, Json profile, Path libsDir) throws IOException {
+			Json locked = Json.read(profile.toString());
+
+			for (Json libraryJson : locked.at("libraries").asJsonList()) {
+				Library library = new Library(libraryJson);
+				if (library.size >= 0 && library.sha1 != null) continue;
+
+				Path file = libsDir.resolve(library.getPath());
+				libraryJson.set("size", Files.size(file));
+				libraryJson.set("sha1", Utils.sha1String(file));
+			}
+
+			lock = new InstallLock(side, loaderVersion, gameVersion, metaPath, locked, null);
+		}
+
+		public synchronized void recordServer(VersionMeta.Download download) {
+			server = Json.object()
+					.set("url", download.url)
+					.set("size", download.size)
+					.set("sha1", download.sha1);
+		}
+
+		/**
+		 * Stop recording and get the recorded lock.
+		 */
+		public synchronized InstallLock finish() {
+			if (recorder == this) recorder = null;
+			if (lock == null) throw new IllegalStateException("Nothing to lock, only installs resolved through meta can be locked");
+
+			return new InstallLock(lock.side, lock.loaderVersion, lock.gameVersion, lock.metaPath, lock.profile, server);
+		}
+	}
+}
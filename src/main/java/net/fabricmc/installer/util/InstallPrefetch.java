@@ -0,0 +1,239 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import mjson.Json;
+
+/**
+ * Speculative download of an install the user is likely to confirm, started while they are still looking at the
+ * selection.
+ *
+ * <p>The profile json is kept in memory and the libraries missing from the target directory are staged in a temporary
+ * directory. Installing the same profile into the same directory {@link #claim claims} the prefetch, which then serves
+ * the profile and moves the staged libraries into place, anything else discards it.
+ */
+public final class InstallPrefetch implements Closeable {
+	private static final InstallerProgress QUIET = new InstallerProgress() {
+		@Override
+		public void updateProgress(String text) { }
+
+		@Override
+		public void error(Throwable throwable) {
+			throwable.printStackTrace();
+		}
+	};
+
+	private static InstallPrefetch pending;
+	private static volatile InstallPrefetch active;
+
+	static {
+		// don't leave the staged libraries behind if the installer is closed without installing
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			synchronized (InstallPrefetch.class) {
+				if (pending != null) pending.discard();
+			}
+		}, "Install prefetch cleanup"));
+	}
+
+	private final String metaPath;
+	private final Path libsDir;
+	private final Thread thread;
+	private Path stagingDir;
+	private volatile String profile;
+	private volatile IOException failure;
+	private boolean running = true;
+	private boolean discarded;
+
+	private InstallPrefetch(String metaPath, Path libsDir) {
+		this.metaPath = metaPath;
+		this.libsDir = libsDir;
+		this.thread = new Thread(this::run, "Install prefetch " + metaPath);
+		thread.setDaemon(true);
+	}
+
+	/**
+	 * Start prefetching the profile at metaPath for an install into libsDir, replacing the previous prefetch unless it
+	 * is for the same install.
+	 */
+	public static synchronized void start(String metaPath, Path libsDir) {
+		libsDir = libsDir.toAbsolutePath().normalize();
+
+		if (pending != null) {
+			if (pending.metaPath.equals(metaPath) && pending.libsDir.equals(libsDir)) return;
+
+			pending.discard();
+		}
+
+		pending = new InstallPrefetch(metaPath, libsDir);
+		pending.thread.start();
+	}
+
+	/**
+	 * Take the prefetch for an install of the profile at metaPath into libsDir, waiting for it to finish, and make it
+	 * the active one until it is closed.
+	 *
+	 * @return the prefetch, or null if there was none for this install or it failed
+	 */
+	public static InstallPrefetch claim(String metaPath, Path libsDir) throws InterruptedIOException {
+		InstallPrefetch ret;
+
+		synchronized (InstallPrefetch.class) {
+			ret = pending;
+			pending = null;
+		}
+
+		if (ret == null) return null;
+
+		if (!ret.metaPath.equals(metaPath) || !ret.libsDir.equals(libsDir.toAbsolutePath().normalize())) {
+			ret.discard();
+			return null;
+		}
+
+		try {
+			ret.thread.join(); // the install would fetch the same files, so waiting costs nothing
+		} catch (InterruptedException e) {
+			ret.discard();
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the prefetch");
+		}
+
+		if (ret.failure != null) {
+			System.out.println("prefetching "+metaPath+" failed, installing without it: "+ret.failure);
+			ret.discard();
+			return null;
+		}
+
+		active = ret;
+
+		return ret;
+	}
+
+	static InstallPrefetch getActive() {
+		return active;
+	}
+
+	/**
+	 * Get the prefetched profile json, or null if path is not the prefetched profile.
+	 */
+	String getProfile(String path) {
+		return path.equals(metaPath) ? profile : null;
+	}
+
+	/**
+	 * Move the staged copy of library to file.
+	 *
+	 * @return whether the library was staged
+	 */
+	boolean commit(Library library, Path file) throws IOException {
+		if (!file.toAbsolutePath().normalize().startsWith(libsDir)) return false;
+
+		Path staged = stagingDir.resolve(library.getPath());
+		if (!Files.isRegularFile(staged)) return false;
+
+		Files.createDirectories(file.getParent());
+		Files.move(staged, file, StandardCopyOption.REPLACE_EXISTING);
+
+		return true;
+	}
+
+	private void run() {
+		try {
+			String profile = NotebookService.readMeta(metaPath, Utils::readString);
+			List<Library> libraries = new ArrayList<>();
+
+			for (Json libraryJson : Json.read(profile).at("libraries").asJsonList()) {
+				Library library = new Library(libraryJson);
+
+				if (!DownloadExecutor.isPresent(library, libsDir.resolve(library.getPath()))) {
+					libraries.add(library);
+				}
+			}
+
+			synchronized (this) {
+				if (discarded) return;
+
+				stagingDir = Files.createTempDirectory("notebook-prefetch");
+			}
+
+			// libraries go through the download services as usual, which leaves their connections warm for the install
+			DownloadExecutor.downloadLibraries(libraries, stagingDir, QUIET);
+			this.profile = profile;
+		} catch (IOException e) {
+			failure = e;
+		} catch (RuntimeException e) {
+			failure = new IOException(e);
+		} finally {
+			synchronized (this) {
+				running = false;
+				if (discarded) deleteStaging();
+			}
+		}
+	}
+
+	private synchronized void discard() {
+		if (discarded) return;
+
+		discarded = true;
+
+		if (running) {
+			thread.interrupt(); // the thread cleans up after itself
+		} else {
+			deleteStaging();
+		}
+	}
+
+	private void deleteStaging() {
+		if (stagingDir == null) return;
+
+		try (Stream<Path> stream = Files.walk(stagingDir)) {
+			for (Path path : (Iterable<Path>) stream.sorted(Comparator.reverseOrder())::iterator) {
+				Files.deleteIfExists(path);
+			}
+		} catch (IOException e) {
+			System.out.println("deleting "+stagingDir+" failed: "+e);
+		}
+	}
+
+	/**
+	 * Stop using the prefetch and delete whatever the install didn't commit.
+	 */
+	@Override
+	public void close() {
+		if (active == this) active = null;
+
+		discard();
+	}
+}
@@ -39,5 +39,12 @@ public interface InstallerProgress {
 
 	void updateProgress(String text);
 
+	/**
+	 * Report the bytes downloaded so far in the current batch, total is -1 if unknown.
+	 *
+	 * <p>This may be called very often and from several threads at once.
+	 */
+	default void updateBytes(long done, long total) { }
+
 	void error(Throwable throwable);
 }
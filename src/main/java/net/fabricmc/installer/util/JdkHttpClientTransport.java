@@ -0,0 +1,270 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ProxySelector;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link HttpTransport} based on java.net.http.HttpClient, which pools connections and multiplexes requests over
+ * HTTP/2 where the server supports it.
+ *
+ * <p>The installer targets Java 8, so the client is accessed reflectively and {@link #create} returns null on older
+ * JVMs. HttpClient has no read timeout for the body, it is enforced by closing streams that stall for too long.
+ */
+final class JdkHttpClientTransport implements HttpTransport {
+	private static ScheduledExecutorService timeoutExecutor;
+
+	private final int readTimeoutMs;
+	private final Object client;
+	private final Object bodyHandler;
+	private final Method newRequestBuilder;
+	private final Method requestHeader;
+	private final Method requestTimeout;
+	private final Method requestBuild;
+	private final Method send;
+	private final Method statusCode;
+	private final Method headers;
+	private final Method firstValue;
+	private final Method body;
+
+	/**
+	 * Create the transport, or return null if java.net.http isn't available.
+	 */
+	static JdkHttpClientTransport create(int connectTimeoutMs, int readTimeoutMs) {
+		try {
+			return new JdkHttpClientTransport(connectTimeoutMs, readTimeoutMs);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private JdkHttpClientTransport(int connectTimeoutMs, int readTimeoutMs) throws ReflectiveOperationException {
+		this.readTimeoutMs = readTimeoutMs;
+
+		Class<?> clientClass = Class.forName("java.net.http.HttpClient");
+		Class<?> clientBuilderClass = Class.forName("java.net.http.HttpClient$Builder");
+		Class<? extends Enum> versionClass = (Class<? extends Enum>) Class.forName("java.net.http.HttpClient$Version");
+		Class<? extends Enum> redirectClass = (Class<? extends Enum>) Class.forName("java.net.http.HttpClient$Redirect");
+		Class<?> requestClass = Class.forName("java.net.http.HttpRequest");
+		Class<?> requestBuilderClass = Class.forName("java.net.http.HttpRequest$Builder");
+		Class<?> responseClass = Class.forName("java.net.http.HttpResponse");
+		Class<?> bodyHandlerClass = Class.forName("java.net.http.HttpResponse$BodyHandler");
+
+		Object builder = clientClass.getMethod("newBuilder").invoke(null);
+		clientBuilderClass.getMethod("version", versionClass).invoke(builder, Enum.valueOf(versionClass, "HTTP_2"));
+		clientBuilderClass.getMethod("followRedirects", redirectClass).invoke(builder, Enum.valueOf(redirectClass, "NORMAL"));
+		clientBuilderClass.getMethod("connectTimeout", Duration.class).invoke(builder, Duration.ofMillis(connectTimeoutMs));
+
+		// HttpClient ignores the system proxy settings unless told otherwise, unlike HttpURLConnection
+		if (ProxySelector.getDefault() != null) {
+			clientBuilderClass.getMethod("proxy", ProxySelector.class).invoke(builder, ProxySelector.getDefault());
+		}
+
+		client = clientBuilderClass.getMethod("build").invoke(builder);
+		bodyHandler = Class.forName("java.net.http.HttpResponse$BodyHandlers").getMethod("ofInputStream").invoke(null);
+		newRequestBuilder = requestClass.getMethod("newBuilder", URI.class);
+		requestHeader = requestBuilderClass.getMethod("header", String.class, String.class);
+		requestTimeout = requestBuilderClass.getMethod("timeout", Duration.class);
+		requestBuild = requestBuilderClass.getMethod("build");
+		send = clientClass.getMethod("send", requestClass, bodyHandlerClass);
+		statusCode = responseClass.getMethod("statusCode");
+		headers = responseClass.getMethod("headers");
+		firstValue = Class.forName("java.net.http.HttpHeaders").getMethod("firstValue", String.class);
+		body = responseClass.getMethod("body");
+	}
+
+	@Override
+	public Response get(URL url, Map<String, String> headers) throws IOException {
+		Object response;
+
+		try {
+			Object builder = newRequestBuilder.invoke(null, url.toURI());
+			requestTimeout.invoke(builder, Duration.ofMillis(readTimeoutMs)); // only covers the time until the headers arrive
+
+			for (Map.Entry<String, String> header : headers.entrySet()) {
+				requestHeader.invoke(builder, header.getKey(), header.getValue());
+			}
+
+			response = send.invoke(client, requestBuild.invoke(builder), bodyHandler);
+		} catch (URISyntaxException e) {
+			throw new IOException("Invalid url "+url, e);
+		} catch (InvocationTargetException e) {
+			throw rethrow(e.getCause());
+		} catch (IllegalAccessException e) {
+			throw new IOException(e);
+		}
+
+		try {
+			int status = (int) statusCode.invoke(response);
+			Object responseHeaders = this.headers.invoke(response);
+			InputStream is = new ReadTimeoutInputStream((InputStream) body.invoke(response), readTimeoutMs);
+
+			return new Response() {
+				@Override
+				public int getStatus() {
+					return status;
+				}
+
+				@Override
+				public String getHeader(String name) {
+					try {
+						return ((Optional<?>) firstValue.invoke(responseHeaders, name)).map(Object::toString).orElse(null);
+					} catch (ReflectiveOperationException e) {
+						throw new RuntimeException(e);
+					}
+				}
+
+				@Override
+				public InputStream getBody() {
+					return is;
+				}
+
+				@Override
+				public void abort() {
+					try {
+						is.close();
+					} catch (IOException e) {
+						// reads fail either way
+					}
+				}
+
+				@Override
+				public void close() throws IOException {
+					is.close();
+				}
+			};
+		} catch (ReflectiveOperationException e) {
+			throw new IOException(e);
+		}
+	}
+
+	private static IOException rethrow(Throwable t) throws IOException {
+		if (t instanceof InterruptedException) {
+			Thread.currentThread().interrupt();
+			InterruptedIOException exc = new InterruptedIOException("HTTP request interrupted");
+			exc.initCause(t);
+			throw exc;
+		}
+
+		if (t instanceof IOException) throw (IOException) t;
+		if (t instanceof RuntimeException) throw (RuntimeException) t;
+		if (t instanceof Error) throw (Error) t;
+
+		throw new IOException(t);
+	}
+
+	private static synchronized ScheduledExecutorService getTimeoutExecutor() {
+		if (timeoutExecutor == null) {
+			ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+				Thread thread = new Thread(r, "HTTP read timeout");
+				thread.setDaemon(true);
+				return thread;
+			});
+			executor.setRemoveOnCancelPolicy(true);
+			timeoutExecutor = executor;
+		}
+
+		return timeoutExecutor;
+	}
+
+	/**
+	 * Closes the stream if a single read blocks for longer than the timeout, which makes the read fail.
+	 */
+	private static final class ReadTimeoutInputStream extends FilterInputStream {
+		private final int timeoutMs;
+		private volatile boolean timedOut;
+
+		ReadTimeoutInputStream(InputStream in, int timeoutMs) {
+			super(in);
+
+			this.timeoutMs = timeoutMs;
+		}
+
+		@Override
+		public int read() throws IOException {
+			ScheduledFuture<?> timeout = scheduleTimeout();
+
+			try {
+				return super.read();
+			} catch (IOException e) {
+				throw translate(e);
+			} finally {
+				timeout.cancel(false);
+			}
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			ScheduledFuture<?> timeout = scheduleTimeout();
+
+			try {
+				return super.read(b, off, len);
+			} catch (IOException e) {
+				throw translate(e);
+			} finally {
+				timeout.cancel(false);
+			}
+		}
+
+		private ScheduledFuture<?> scheduleTimeout() {
+			return getTimeoutExecutor().schedule(() -> {
+				timedOut = true;
+
+				try {
+					in.close();
+				} catch (IOException e) {
+					// the blocked read fails either way
+				}
+			}, timeoutMs, TimeUnit.MILLISECONDS);
+		}
+
+		private IOException translate(IOException e) {
+			if (!timedOut) return e;
+
+			SocketTimeoutException exc = new SocketTimeoutException("Read timed out");
+			exc.initCause(e);
+
+			return exc;
+		}
+	}
+}
@@ -0,0 +1,356 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Pull parser reading a JSON document one token at a time, for large documents of which only a few fields are needed.
+ *
+ * <p>Unlike {@link mjson.Json#read} it never materializes the document, values that aren't asked for are skipped over
+ * without being kept.
+ */
+public final class JsonReader implements Closeable {
+	public enum Token {
+		BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+	}
+
+	private static final int EMPTY_DOCUMENT = 0;
+	private static final int NONEMPTY_DOCUMENT = 1;
+	private static final int EMPTY_ARRAY = 2;
+	private static final int NONEMPTY_ARRAY = 3;
+	private static final int EMPTY_OBJECT = 4;
+	private static final int DANGLING_NAME = 5;
+	private static final int NONEMPTY_OBJECT = 6;
+
+	private final Reader reader;
+	private final char[] buffer = new char[8192];
+	private int pos;
+	private int limit;
+	private long offset; // of buffer[0] in the document, for error messages
+
+	private int[] stack = new int[16];
+	private int stackSize = 1;
+
+	private Token peeked;
+	private String peekedValue; // name, string, number or boolean literal of the peeked token
+	private final StringBuilder builder = new StringBuilder();
+
+	public JsonReader(Reader reader) {
+		this.reader = reader;
+		stack[0] = EMPTY_DOCUMENT;
+	}
+
+	public Token peek() throws IOException {
+		if (peeked != null) return peeked;
+
+		int scope = stack[stackSize - 1];
+		int c;
+
+		switch (scope) {
+		case EMPTY_ARRAY:
+			stack[stackSize - 1] = NONEMPTY_ARRAY;
+			c = nextNonWhitespace();
+			if (c == ']') return peeked = Token.END_ARRAY;
+			unread(c);
+			break;
+		case NONEMPTY_ARRAY:
+			c = nextNonWhitespace();
+			if (c == ']') return peeked = Token.END_ARRAY;
+			if (c != ',') throw syntaxError("Expected , or ]");
+			break;
+		case EMPTY_OBJECT:
+		case NONEMPTY_OBJECT:
+			c = nextNonWhitespace();
+			if (c == '}') return peeked = Token.END_OBJECT;
+
+			if (scope == NONEMPTY_OBJECT) {
+				if (c != ',') throw syntaxError("Expected , or }");
+				c = nextNonWhitespace();
+			}
+
+			if (c != '"') throw syntaxError("Expected name");
+
+			stack[stackSize - 1] = DANGLING_NAME;
+			peekedValue = readString();
+
+			return peeked = Token.NAME;
+		case DANGLING_NAME:
+			stack[stackSize - 1] = NONEMPTY_OBJECT;
+			if (nextNonWhitespace() != ':') throw syntaxError("Expected :");
+			break;
+		case EMPTY_DOCUMENT:
+			stack[0] = NONEMPTY_DOCUMENT;
+			break;
+		case NONEMPTY_DOCUMENT:
+			if (nextNonWhitespace() != -1) throw syntaxError("Expected end of document");
+			return peeked = Token.END_DOCUMENT;
+		default:
+			throw new IllegalStateException();
+		}
+
+		c = nextNonWhitespace();
+
+		switch (c) {
+		case '{':
+			return peeked = Token.BEGIN_OBJECT;
+		case '[':
+			return peeked = Token.BEGIN_ARRAY;
+		case '"':
+			peekedValue = readString();
+			return peeked = Token.STRING;
+		case 't':
+		case 'f':
+			pos--;
+			peekedValue = readLiteral();
+			if (!peekedValue.equals("true") && !peekedValue.equals("false")) throw syntaxError("Unexpected "+peekedValue);
+			return peeked = Token.BOOLEAN;
+		case 'n':
+			pos--;
+			if (!readLiteral().equals("null")) throw syntaxError("Expected null");
+			return peeked = Token.NULL;
+		case -1:
+			throw syntaxError("Unexpected end of document");
+		default:
+			if (c != '-' && (c < '0' || c > '9')) throw syntaxError("Unexpected character "+(char) c);
+			pos--;
+			peekedValue = readLiteral();
+			return peeked = Token.NUMBER;
+		}
+	}
+
+	public boolean hasNext() throws IOException {
+		Token token = peek();
+
+		return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+	}
+
+	public void beginObject() throws IOException {
+		expect(Token.BEGIN_OBJECT);
+		push(EMPTY_OBJECT);
+	}
+
+	public void endObject() throws IOException {
+		expect(Token.END_OBJECT);
+		stackSize--;
+	}
+
+	public void beginArray() throws IOException {
+		expect(Token.BEGIN_ARRAY);
+		push(EMPTY_ARRAY);
+	}
+
+	public void endArray() throws IOException {
+		expect(Token.END_ARRAY);
+		stackSize--;
+	}
+
+	public String nextName() throws IOException {
+		expect(Token.NAME);
+
+		return peekedValue;
+	}
+
+	/**
+	 * Read a string value, numbers are returned as their literal.
+	 */
+	public String nextString() throws IOException {
+		if (peek() == Token.NUMBER) {
+			peeked = null;
+
+			return peekedValue;
+		}
+
+		expect(Token.STRING);
+
+		return peekedValue;
+	}
+
+	public long nextLong() throws IOException {
+		expect(Token.NUMBER);
+
+		try {
+			return Long.parseLong(peekedValue);
+		} catch (NumberFormatException e) {
+			throw syntaxError("Expected a long, got "+peekedValue);
+		}
+	}
+
+	public boolean nextBoolean() throws IOException {
+		expect(Token.BOOLEAN);
+
+		return peekedValue.equals("true");
+	}
+
+	public void nextNull() throws IOException {
+		expect(Token.NULL);
+	}
+
+	/**
+	 * Skip the next value, including everything nested in it.
+	 */
+	public void skipValue() throws IOException {
+		int depth = 0;
+
+		do {
+			switch (peek()) {
+			case BEGIN_OBJECT:
+				beginObject();
+				depth++;
+				break;
+			case BEGIN_ARRAY:
+				beginArray();
+				depth++;
+				break;
+			case END_OBJECT:
+				endObject();
+				depth--;
+				break;
+			case END_ARRAY:
+				endArray();
+				depth--;
+				break;
+			case END_DOCUMENT:
+				throw syntaxError("Unexpected end of document");
+			default:
+				peeked = null;
+			}
+		} while (depth > 0);
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	private void expect(Token token) throws IOException {
+		if (peek() != token) throw syntaxError("Expected "+token+" but was "+peeked);
+
+		peeked = null;
+	}
+
+	private void push(int scope) {
+		if (stackSize == stack.length) stack = Arrays.copyOf(stack, stackSize * 2);
+
+		stack[stackSize++] = scope;
+	}
+
+	private int read() throws IOException {
+		if (pos == limit) {
+			int len = reader.read(buffer, 0, buffer.length);
+			if (len <= 0) return -1;
+
+			offset += limit;
+			pos = 0;
+			limit = len;
+		}
+
+		return buffer[pos++];
+	}
+
+	private void unread(int c) {
+		if (c != -1) pos--;
+	}
+
+	private int nextNonWhitespace() throws IOException {
+		int c;
+
+		do {
+			c = read();
+		} while (c == ' ' || c == '\t' || c == '\n' || c == '\r');
+
+		return c;
+	}
+
+	private String readString() throws IOException {
+		builder.setLength(0);
+
+		for (;;) {
+			int c = read();
+
+			if (c == '"') {
+				return builder.toString();
+			} else if (c == '\\') {
+				c = read();
+
+				switch (c) {
+				case 'b': builder.append('\b'); break;
+				case 'f': builder.append('\f'); break;
+				case 'n': builder.append('\n'); break;
+				case 'r': builder.append('\r'); break;
+				case 't': builder.append('\t'); break;
+				case 'u':
+					int value = 0;
+
+					for (int i = 0; i < 4; i++) {
+						int digit = Character.digit(read(), 16);
+						if (digit < 0) throw syntaxError("Invalid unicode escape");
+						value = value << 4 | digit;
+					}
+
+					builder.append((char) value);
+					break;
+				case '"':
+				case '\\':
+				case '/':
+					builder.append((char) c);
+					break;
+				default:
+					throw syntaxError("Invalid escape sequence");
+				}
+			} else if (c == -1) {
+				throw syntaxError("Unterminated string");
+			} else {
+				builder.append((char) c);
+			}
+		}
+	}
+
+	private String readLiteral() throws IOException {
+		builder.setLength(0);
+
+		for (;;) {
+			int c = read();
+
+			if (c == -1 || c == ',' || c == '}' || c == ']' || c == ':' || c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+				unread(c);
+				break;
+			}
+
+			builder.append((char) c);
+		}
+
+		if (builder.length() == 0) throw syntaxError("Expected a value");
+
+		return builder.toString();
+	}
+
+	private IOException syntaxError(String message) {
+		return new IOException("Malformed JSON at offset "+(offset + pos)+": "+message);
+	}
+}
@@ -25,70 +25,166 @@
 package net.fabricmc.installer.util;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 import mjson.Json;
 
+/**
+ * Minecraft versions from Mojang's launcher manifest, with the experimental manifest on the Fabric maven as a second
+ * tier that is only fetched for versions Mojang doesn't list.
+ */
 public class LauncherMeta {
-	private static LauncherMeta launcherMeta = null;
+	private static volatile LauncherMeta launcherMeta = null;
 
 	public static LauncherMeta getLauncherMeta() throws IOException {
-		if (launcherMeta == null) {
-			launcherMeta = load();
+		LauncherMeta ret = launcherMeta;
+
+		if (ret == null) {
+			synchronized (LauncherMeta.class) {
+				ret = launcherMeta;
+
+				if (ret == null) {
+					launcherMeta = ret = new LauncherMeta(getVersionsFromUrl(Reference.MINECRAFT_LAUNCHER_MANIFEST));
+				}
+			}
 		}
 
-		return launcherMeta;
+		return ret;
 	}
 
-	private static LauncherMeta load() throws IOException {
-		List<Version> versions = new ArrayList<>();
-		versions.addAll(getVersionsFromUrl(Reference.MINECRAFT_LAUNCHER_MANIFEST));
-		versions.addAll(getVersionsFromUrl(Reference.EXPERIMENTAL_LAUNCHER_MANIFEST));
+	private static List<Version> getVersionsFromUrl(String url) throws IOException {
+		// the manifests list every version ever released, only id and url are needed from each
+		return NotebookService.readSubstitutedMaven(url, is -> {
+			JsonReader reader = new JsonReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+			List<Version> versions = new ArrayList<>();
+
+			reader.beginObject();
+
+			while (reader.hasNext()) {
+				if (!reader.nextName().equals("versions")) {
+					reader.skipValue();
+					continue;
+				}
+
+				reader.beginArray();
+
+				while (reader.hasNext()) {
+					versions.add(readVersion(reader));
+				}
 
-		return new LauncherMeta(versions);
+				reader.endArray();
+			}
+
+			reader.endObject();
+
+			return versions;
+		});
 	}
 
-	private static List<Version> getVersionsFromUrl(String url) throws IOException {
-		Json json = NotebookService.queryJsonSubstitutedMaven(url);
+	private static Version readVersion(JsonReader reader) throws IOException {
+		String id = null;
+		String url = null;
+
+		reader.beginObject();
+
+		while (reader.hasNext()) {
+			switch (reader.nextName()) {
+			case "id":
+				id = reader.nextString();
+				break;
+			case "url":
+				url = reader.nextString();
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
 
-		List<Version> versions = json.at("versions").asJsonList()
-				.stream()
-				.map(Version::new)
-				.collect(Collectors.toList());
+		reader.endObject();
 
-		return versions;
+		if (id == null || url == null) throw new IOException("Version without id or url in launcher manifest");
+
+		return new Version(id, url);
 	}
 
-	public final List<Version> versions;
+	private final Map<String, Version> versions;
+	private volatile Map<String, Version> experimentalVersions;
 
 	public LauncherMeta(List<Version> versions) {
-		this.versions = versions;
+		this.versions = index(versions);
+	}
+
+	private static Map<String, Version> index(List<Version> versions) {
+		Map<String, Version> ret = new LinkedHashMap<>();
+
+		for (Version version : versions) {
+			ret.putIfAbsent(version.id, version);
+		}
+
+		return ret;
+	}
+
+	private Map<String, Version> getExperimentalVersions() throws IOException {
+		Map<String, Version> ret = experimentalVersions;
+
+		if (ret == null) {
+			synchronized (this) {
+				ret = experimentalVersions;
+
+				if (ret == null) {
+					experimentalVersions = ret = index(getVersionsFromUrl(Reference.EXPERIMENTAL_LAUNCHER_MANIFEST));
+				}
+			}
+		}
+
+		return ret;
 	}
 
 	public static class Version {
 		public final String id;
 		public final String url;
 
-		private VersionMeta versionMeta = null;
+		private volatile VersionMeta versionMeta = null;
 
 		public Version(Json json) {
-			this.id = json.at("id").asString();
-			this.url = json.at("url").asString();
+			this(json.at("id").asString(), json.at("url").asString());
+		}
+
+		public Version(String id, String url) {
+			this.id = id;
+			this.url = url;
 		}
 
 		public VersionMeta getVersionMeta() throws IOException {
-			if (versionMeta == null) {
-				Json json = NotebookService.queryJsonSubstitutedMaven(url);
-				versionMeta = new VersionMeta(json);
+			VersionMeta ret = versionMeta;
+
+			if (ret == null) {
+				synchronized (this) {
+					ret = versionMeta;
+
+					if (ret == null) {
+						Json json = NotebookService.queryJsonSubstitutedMaven(url);
+						versionMeta = ret = new VersionMeta(json);
+					}
+				}
 			}
 
-			return versionMeta;
+			return ret;
 		}
 	}
 
-	public Version getVersion(String version) {
-		return versions.stream().filter(v -> v.id.equals(version)).findFirst().orElse(null);
+	/**
+	 * Get a version by id, or null if neither manifest has it.
+	 */
+	public Version getVersion(String version) throws IOException {
+		Version ret = versions.get(version);
+		if (ret != null) return ret;
+
+		return getExperimentalVersions().get(version);
 	}
 }
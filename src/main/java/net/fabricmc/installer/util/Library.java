@@ -25,7 +25,10 @@
 package net.fabricmc.installer.util;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 import mjson.Json;
 
@@ -33,17 +36,82 @@ public class Library {
 	public final String name;
 	public final String url;
 	public final Path inputPath;
+	public final long size; // -1 if unknown
+	public final String sha1; // null if unknown
 
 	public Library(String name, String url, Path inputPath) {
 		this.name = name;
 		this.url = url;
 		this.inputPath = inputPath;
+		this.size = -1;
+		this.sha1 = null;
+	}
+
+	public Library(String name, String url, long size, String sha1) {
+		this.name = name;
+		this.url = url;
+		this.inputPath = null;
+		this.size = size;
+		this.sha1 = sha1;
 	}
 
 	public Library(Json json) {
 		name = json.at("name").asString();
 		url = json.at("url").asString();
 		inputPath = null;
+
+		// newer meta profiles list the artifact size and hashes, older ones only name and url
+		Json sizeJson = json.at("size");
+		size = sizeJson != null ? sizeJson.asLong() : -1;
+		Json sha1Json = json.at("sha1");
+		sha1 = sha1Json != null ? sha1Json.asString() : null;
+	}
+
+	/**
+	 * Read a json array of libraries, only keeping the fields a library is made of.
+	 */
+	public static List<Library> readList(JsonReader reader) throws IOException {
+		List<Library> ret = new ArrayList<>();
+
+		reader.beginArray();
+
+		while (reader.hasNext()) {
+			String name = null;
+			String url = null;
+			long size = -1;
+			String sha1 = null;
+
+			reader.beginObject();
+
+			while (reader.hasNext()) {
+				switch (reader.nextName()) {
+				case "name":
+					name = reader.nextString();
+					break;
+				case "url":
+					url = reader.nextString();
+					break;
+				case "size":
+					size = reader.nextLong();
+					break;
+				case "sha1":
+					sha1 = reader.nextString();
+					break;
+				default:
+					reader.skipValue();
+				}
+			}
+
+			reader.endObject();
+
+			if (name == null || url == null) throw new IOException("Library without name or url");
+
+			ret.add(new Library(name, url, size, sha1));
+		}
+
+		reader.endArray();
+
+		return ret;
 	}
 
 	public String getURL() {
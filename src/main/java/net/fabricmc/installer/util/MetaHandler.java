@@ -24,30 +24,204 @@
 
 package net.fabricmc.installer.util;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
+import javax.swing.SwingUtilities;
+
 import mjson.Json;
 
+/**
+ * Version list from meta, kept as a snapshot in the {@link ArtifactCache} directory.
+ *
+ * <p>A snapshot younger than the staleness bound completes the handler right away and is refreshed in the background,
+ * an older one is ignored and loading waits for the network.
+ */
 public class MetaHandler extends CompletableHandler<List<MetaHandler.GameVersion>> {
+	private static long maxStalenessMs = 24 * 60 * 60 * 1000L;
+
 	private final String metaPath;
-	private List<GameVersion> versions;
+	private final AtomicBoolean loading = new AtomicBoolean();
+	private final List<Consumer<List<GameVersion>>> refreshConsumers = new CopyOnWriteArrayList<>();
+	private volatile List<GameVersion> versions;
 
 	public MetaHandler(String path) {
 		this.metaPath = path;
 	}
 
+	/**
+	 * Set how old a snapshot may be to be used at startup, 0 always waits for the network.
+	 */
+	public static void setMaxStaleness(long seconds) {
+		if (seconds < 0) throw new IllegalArgumentException("negative staleness: " + seconds);
+
+		maxStalenessMs = seconds * 1000;
+	}
+
 	public void load() throws IOException {
+		try {
+			List<GameVersion> snapshot = readSnapshot();
+
+			if (snapshot != null) {
+				versions = snapshot;
+				complete(snapshot);
+				refreshAsync();
+
+				return;
+			}
+
+			versions = fetch();
+			writeSnapshot(versions);
+		} catch (IOException | RuntimeException e) {
+			fail(e);
+			throw e;
+		}
+
+		complete(versions);
+	}
+
+	/**
+	 * Start loading on a background thread unless that already happened, the outcome is reported to the callbacks.
+	 */
+	public void loadAsync() {
+		if (!loading.compareAndSet(false, true)) return;
+
+		Thread thread = new Thread(() -> {
+			try {
+				load();
+			} catch (IOException | RuntimeException e) {
+				// reported through the handler
+			}
+		}, "Meta loader " + metaPath);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Run refreshConsumer on the Swing event dispatch thread whenever a background refresh changed the versions that
+	 * were served from the snapshot.
+	 */
+	public void onRefreshSwing(Consumer<List<GameVersion>> refreshConsumer) {
+		refreshConsumers.add(refreshConsumer);
+	}
+
+	private List<GameVersion> fetch() throws IOException {
 		Json json = NotebookService.queryMetaJson(metaPath);
 
-		this.versions = json.asJsonList()
+		return json.asJsonList()
 				.stream()
 				.map(GameVersion::new)
 				.collect(Collectors.toList());
+	}
 
-		complete(versions);
+	private void refreshAsync() {
+		Thread thread = new Thread(() -> {
+			try {
+				List<GameVersion> fresh = fetch();
+				boolean changed = !serialize(fresh).equals(serialize(versions));
+				writeSnapshot(fresh);
+
+				if (changed) {
+					versions = fresh;
+					refreshConsumers.forEach(consumer -> SwingUtilities.invokeLater(() -> consumer.accept(fresh)));
+				}
+			} catch (IOException | RuntimeException e) {
+				System.out.println("refreshing "+metaPath+" failed, keeping the snapshot: "+e);
+			}
+		}, "Meta refresh " + metaPath);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private Path getSnapshotFile() {
+		Path cacheDir = ArtifactCache.getCacheDir();
+		if (cacheDir == null) return null;
+
+		// snapshots of a custom meta server must not be mixed up with those of the default ones
+		String key = NotebookService.getFixedMetaUrl() != null ? NotebookService.getFixedMetaUrl() + metaPath : metaPath;
+
+		return cacheDir.resolve("meta").resolve(Utils.bytesToHex(Utils.sha1(key.getBytes(StandardCharsets.UTF_8))) + ".txt");
+	}
+
+	/**
+	 * Read the snapshot, or return null if there is none young enough.
+	 */
+	private List<GameVersion> readSnapshot() throws IOException {
+		Path file = getSnapshotFile();
+		if (file == null || maxStalenessMs <= 0) return null;
+
+		String content;
+
+		try {
+			content = Utils.readString(file);
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+
+		try (BufferedReader reader = new BufferedReader(new StringReader(content))) {
+			String line = reader.readLine();
+			if (line == null || System.currentTimeMillis() - Long.parseLong(line) >= maxStalenessMs) return null;
+
+			List<GameVersion> ret = new ArrayList<>();
+
+			while ((line = reader.readLine()) != null) {
+				if (line.length() < 3 || line.charAt(1) != ' ') return null;
+
+				ret.add(new GameVersion(line.substring(2), line.charAt(0) == '1'));
+			}
+
+			return ret.isEmpty() ? null : ret;
+		} catch (NumberFormatException e) {
+			return null; // damaged, fetch it again
+		}
+	}
+
+	/**
+	 * Write the snapshot: the fetch time followed by one line per version, its stable flag and name.
+	 */
+	private void writeSnapshot(List<GameVersion> versions) {
+		Path file = getSnapshotFile();
+		if (file == null) return;
+
+		try {
+			Files.createDirectories(file.getParent());
+
+			Path tmp = file.resolveSibling(file.getFileName() + "." + UUID.randomUUID() + ".tmp");
+			Utils.writeToFile(tmp, System.currentTimeMillis() + "\n" + serialize(versions));
+
+			try {
+				Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			System.out.println("writing the "+metaPath+" snapshot failed: "+e);
+		}
+	}
+
+	private static String serialize(List<GameVersion> versions) {
+		StringBuilder ret = new StringBuilder();
+
+		for (GameVersion version : versions) {
+			ret.append(version.stable ? '1' : '0').append(' ').append(version.version).append('\n');
+		}
+
+		return ret.toString();
 	}
 
 	public List<GameVersion> getVersions() {
@@ -77,6 +251,11 @@ public class MetaHandler extends CompletableHandler<List<MetaHandler.GameVersion
 			stable = json.at("stable").asBoolean();
 		}
 
+		public GameVersion(String version, boolean stable) {
+			this.version = version;
+			this.stable = stable;
+		}
+
 		public String getVersion() {
 			return version;
 		}
@@ -0,0 +1,238 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Tracks latency and errors per {@link NotebookService} to route requests to the healthiest one first.
+ *
+ * <p>Each service keeps exponentially weighted moving averages of its latency, error rate, download throughput and
+ * the share of requested files it had. Services that fail repeatedly are benched for a cooldown and only tried after
+ * all others. The state is stored in the cache directory when the process exits, so new processes start with what
+ * earlier ones learned.
+ */
+final class MirrorHealth {
+	private static final double ALPHA = 0.3;
+	private static final double PRIOR_LATENCY_MS = 1000; // assumed for services without samples yet
+	private static final double PRIOR_THROUGHPUT = 1024 * 1024; // bytes/s, likewise
+	private static final long MIN_THROUGHPUT_SAMPLE_BYTES = 64 * 1024; // smaller downloads mostly measure latency
+	private static final double MIN_HIT_RATE = 0.05; // keeps probing services that missed files, they may get them
+	private static final int BENCH_AFTER_FAILURES = 2;
+	private static final long BENCH_COOLDOWN_MS = 10 * 60 * 1000;
+	private static final StateFile FILE = new StateFile("mirror-health.properties", "mirror health state");
+	private static final int RECENT_SAMPLES = 32; // kept in memory for percentiles
+	private static final int MIN_PERCENTILE_SAMPLES = 5;
+
+	private static Map<String, Stats> stats;
+	private static boolean dirty;
+
+	/**
+	 * Order services by score, best first. Benched services come last, in the order their cooldown expires.
+	 */
+	static synchronized List<NotebookService> rank(NotebookService[] services) {
+		load();
+
+		long now = System.currentTimeMillis();
+		List<NotebookService> ret = new ArrayList<>(Arrays.asList(services));
+		// the sort is stable, so services with equal scores keep the array order
+		ret.sort(Comparator.comparingLong((NotebookService service) -> Math.max(get(service).benchedUntil - now, 0))
+				.thenComparingDouble(service -> get(service).score()));
+
+		return ret;
+	}
+
+	static synchronized void recordSuccess(NotebookService service, long latencyMs) {
+		Stats s = get(service);
+
+		if (latencyMs >= 0) {
+			s.latencyMs = s.samples == 0 ? latencyMs : ALPHA * latencyMs + (1 - ALPHA) * s.latencyMs;
+			s.samples++;
+			s.recent[s.recentCount++ % RECENT_SAMPLES] = latencyMs;
+		}
+
+		s.hitRate = ALPHA + (1 - ALPHA) * s.hitRate;
+		s.errorRate = (1 - ALPHA) * s.errorRate;
+		s.consecutiveFailures = 0;
+		s.benchedUntil = 0;
+		dirty = true;
+	}
+
+	/**
+	 * Record that the service answered, but doesn't have the requested file.
+	 */
+	static synchronized void recordNotFound(NotebookService service) {
+		Stats s = get(service);
+		s.hitRate = (1 - ALPHA) * s.hitRate;
+		s.errorRate = (1 - ALPHA) * s.errorRate;
+		s.consecutiveFailures = 0;
+		s.benchedUntil = 0;
+		dirty = true;
+	}
+
+	static synchronized void recordThroughput(NotebookService service, long bytes, long nanos) {
+		if (bytes < MIN_THROUGHPUT_SAMPLE_BYTES) return;
+
+		Stats s = get(service);
+		double throughput = bytes * 1e9 / Math.max(nanos, 1);
+		s.throughput = s.throughputSamples == 0 ? throughput : ALPHA * throughput + (1 - ALPHA) * s.throughput;
+		s.throughputSamples++;
+		dirty = true;
+	}
+
+	/**
+	 * Get the share of downloads a service should get relative to the others, 0 while it is benched.
+	 */
+	static synchronized double getDownloadWeight(NotebookService service) {
+		load();
+
+		Stats s = get(service);
+		if (s.benchedUntil > System.currentTimeMillis()) return 0;
+
+		return s.throughput * Math.max(s.hitRate, MIN_HIT_RATE);
+	}
+
+	static synchronized void recordFailure(NotebookService service) {
+		Stats s = get(service);
+		s.errorRate = ALPHA + (1 - ALPHA) * s.errorRate;
+
+		if (++s.consecutiveFailures >= BENCH_AFTER_FAILURES) {
+			s.benchedUntil = System.currentTimeMillis() + BENCH_COOLDOWN_MS;
+		}
+
+		dirty = true;
+	}
+
+	/**
+	 * Estimate the given latency percentile of a service from its recent samples, or a multiple of the average if
+	 * there aren't enough of them yet.
+	 */
+	static synchronized long getLatencyPercentile(NotebookService service, double percentile) {
+		load();
+
+		Stats s = get(service);
+		int count = Math.min(s.recentCount, RECENT_SAMPLES);
+
+		if (count < MIN_PERCENTILE_SAMPLES) {
+			return (long) (s.latencyMs * 2);
+		}
+
+		long[] sorted = Arrays.copyOf(s.recent, count);
+		Arrays.sort(sorted);
+		int index = (int) Math.ceil(percentile / 100 * count) - 1;
+
+		return sorted[Math.max(0, Math.min(count - 1, index))];
+	}
+
+	private static Stats get(NotebookService service) {
+		load();
+
+		return stats.computeIfAbsent(getKey(service), k -> new Stats());
+	}
+
+	private static String getKey(NotebookService service) {
+		return service.getMetaUrl() + "|" + service.getMavenUrl();
+	}
+
+	private static void load() {
+		if (stats != null) return;
+
+		stats = new HashMap<>();
+		if (FILE.getPath() == null) return;
+
+		// written once instead of after every request
+		FILE.onExit(MirrorHealth::flush);
+
+		Properties properties = FILE.read();
+
+		for (String key : properties.stringPropertyNames()) {
+			String[] parts = properties.getProperty(key).split(",");
+			if (parts.length != 8) continue;
+
+			try {
+				Stats s = new Stats();
+				s.latencyMs = Double.parseDouble(parts[0]);
+				s.samples = Integer.parseInt(parts[1]);
+				s.errorRate = Double.parseDouble(parts[2]);
+				s.consecutiveFailures = Integer.parseInt(parts[3]);
+				s.benchedUntil = Long.parseLong(parts[4]);
+				s.throughput = Double.parseDouble(parts[5]);
+				s.throughputSamples = Integer.parseInt(parts[6]);
+				s.hitRate = Double.parseDouble(parts[7]);
+
+				stats.put(key, s);
+			} catch (NumberFormatException e) {
+				// ignore the corrupt entry
+			}
+		}
+	}
+
+	/**
+	 * Store the state if it changed since it was last stored.
+	 */
+	static synchronized void flush() {
+		if (!dirty) return;
+
+		dirty = false;
+		save();
+	}
+
+	private static void save() {
+		FILE.update(properties -> {
+			// services only other processes used keep their stored state
+			for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+				Stats s = entry.getValue();
+				properties.setProperty(entry.getKey(), s.latencyMs + "," + s.samples + "," + s.errorRate + "," + s.consecutiveFailures + "," + s.benchedUntil
+						+ "," + s.throughput + "," + s.throughputSamples + "," + s.hitRate);
+			}
+		});
+	}
+
+	private static final class Stats {
+		double latencyMs = PRIOR_LATENCY_MS;
+		int samples;
+		double errorRate;
+		int consecutiveFailures;
+		long benchedUntil;
+		double throughput = PRIOR_THROUGHPUT;
+		int throughputSamples;
+		double hitRate = 1;
+		final long[] recent = new long[RECENT_SAMPLES];
+		int recentCount;
+
+		double score() {
+			// lower is better, errors weigh in as if they multiplied the latency
+			return latencyMs * (1 + 4 * errorRate);
+		}
+	}
+
+	private MirrorHealth() { }
+}
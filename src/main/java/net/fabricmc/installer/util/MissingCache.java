@@ -0,0 +1,160 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer.util;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Remembers paths a {@link NotebookService} answered with 404 or 410 for a short time, so lookups of missing files
+ * skip the services known not to have them instead of waiting for each one again.
+ *
+ * <p>Entries are kept in memory and, if the artifact cache is enabled, stored in its directory when the process exits
+ * to carry them over to the next runs.
+ */
+public final class MissingCache {
+	private static final StateFile FILE = new StateFile("missing.properties", "missing file cache");
+
+	private static long ttlMs = 5 * 60 * 1000;
+	private static Map<String, Entry> entries;
+	private static final Set<String> changed = new HashSet<>(); // keys added or removed since the last flush
+
+	/**
+	 * Get the status a service answered for path with, or -1 if it isn't known to be missing there.
+	 */
+	static synchronized int getStatus(NotebookService service, String path) {
+		if (ttlMs <= 0) return -1;
+
+		load();
+
+		Entry entry = entries.get(getKey(service, path));
+
+		return entry != null && entry.expiry > System.currentTimeMillis() ? entry.status : -1;
+	}
+
+	static synchronized void recordMissing(NotebookService service, String path, int status) {
+		if (ttlMs <= 0) return;
+
+		load();
+		String key = getKey(service, path);
+		entries.put(key, new Entry(System.currentTimeMillis() + ttlMs, status));
+		changed.add(key);
+	}
+
+	static synchronized void recordPresent(NotebookService service, String path) {
+		if (ttlMs <= 0) return;
+
+		load();
+		String key = getKey(service, path);
+		if (entries.remove(key) != null) changed.add(key);
+	}
+
+	/**
+	 * Set how long missing paths are remembered, 0 disables the cache.
+	 */
+	public static synchronized void setTtl(long seconds) {
+		if (seconds < 0) throw new IllegalArgumentException("negative ttl: " + seconds);
+
+		ttlMs = seconds * 1000;
+	}
+
+	private static String getKey(NotebookService service, String path) {
+		return service.getMetaUrl() + "|" + service.getMavenUrl() + "|" + path;
+	}
+
+	private static void load() {
+		if (entries != null) return;
+
+		entries = new HashMap<>();
+		if (FILE.getPath() == null) return;
+
+		// written once instead of after every lookup
+		FILE.onExit(MissingCache::flush);
+
+		Properties properties = FILE.read();
+		long now = System.currentTimeMillis();
+
+		for (String key : properties.stringPropertyNames()) {
+			Entry entry = Entry.parse(properties.getProperty(key));
+			// don't trust entries from the future beyond the current ttl, the clock or ttl may have changed
+			if (entry != null && entry.expiry > now && entry.expiry <= now + ttlMs) entries.put(key, entry);
+		}
+	}
+
+	/**
+	 * Store the entries that changed since they were last stored.
+	 */
+	static synchronized void flush() {
+		if (changed.isEmpty()) return;
+
+		FILE.update(properties -> {
+			// other processes' entries stay unless this one found the path again
+			for (String key : changed) {
+				Entry entry = entries.get(key);
+
+				if (entry != null) {
+					properties.setProperty(key, entry.expiry + "," + entry.status);
+				} else {
+					properties.remove(key);
+				}
+			}
+
+			long now = System.currentTimeMillis();
+
+			for (String key : properties.stringPropertyNames()) {
+				Entry entry = Entry.parse(properties.getProperty(key));
+				if (entry == null || entry.expiry <= now) properties.remove(key);
+			}
+		});
+
+		changed.clear();
+	}
+
+	private static final class Entry {
+		final long expiry;
+		final int status;
+
+		Entry(long expiry, int status) {
+			this.expiry = expiry;
+			this.status = status;
+		}
+
+		static Entry parse(String value) {
+			String[] parts = value.split(",");
+			if (parts.length != 2) return null;
+
+			try {
+				return new Entry(Long.parseLong(parts[0]), Integer.parseInt(parts[1]));
+			} catch (NumberFormatException e) {
+				return null; // corrupt entry
+			}
+		}
+	}
+
+	private MissingCache() { }
+}
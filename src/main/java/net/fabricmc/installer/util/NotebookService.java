@@ -24,86 +24,337 @@
 
 package net.fabricmc.installer.util;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import mjson.Json;
 
 public final class NotebookService {
-	private static int activeIndex = 0; // index into INSTANCES or -1 if set to a fixed service
 	private static NotebookService fixedService;
+	private static double hedgePercentile = -1; // latency percentile after which to query the next service, or -1 to disable hedging
+	private static ExecutorService hedgeExecutor;
 
 	private final String meta;
 	private final String maven;
 
 	/**
-	 * Query Fabric Meta path and decode as JSON.
+	 * Query Fabric Meta path and decode as JSON, reading it from the active {@link InstallBundle},
+	 * {@link InstallLock} or {@link InstallPrefetch} if there is one.
 	 */
 	public static Json queryMetaJson(String path) throws IOException {
-		return invokeWithFallbacks((service, arg) -> Json.read(Utils.readString(new URL(service.meta + arg))), path);
+		InstallBundle bundle = InstallBundle.getActive();
+		if (bundle != null) return Json.read(bundle.readString(InstallBundle.getMetaEntry(path)));
+
+		InstallLock lock = InstallLock.getActive();
+		if (lock != null) return lock.getProfile(path);
+
+		String prefetched = getPrefetchedProfile(path);
+		if (prefetched != null) return Json.read(prefetched);
+
+		return RetryPolicy.run(path, InstallerProgress.CONSOLE,
+				() -> invokeWithFallbacks((service, arg) -> Json.read(HttpCache.readString(new URL(service.meta + arg))), path, true));
+	}
+
+	/**
+	 * Query Fabric Meta path and hand the body to reader as a stream, reading it from the active {@link InstallBundle},
+	 * {@link InstallLock} or {@link InstallPrefetch} if there is one.
+	 *
+	 * <p>reader may be invoked more than once, and concurrently if the query is hedged.
+	 */
+	public static <T> T readMeta(String path, Utils.BodyReader<T> reader) throws IOException {
+		InstallBundle bundle = InstallBundle.getActive();
+		if (bundle != null) return reader.read(new ByteArrayInputStream(bundle.readString(InstallBundle.getMetaEntry(path)).getBytes(StandardCharsets.UTF_8)));
+
+		InstallLock lock = InstallLock.getActive();
+		if (lock != null) return reader.read(new ByteArrayInputStream(lock.getProfile(path).toString().getBytes(StandardCharsets.UTF_8)));
+
+		String prefetched = getPrefetchedProfile(path);
+		if (prefetched != null) return reader.read(new ByteArrayInputStream(prefetched.getBytes(StandardCharsets.UTF_8)));
+
+		return RetryPolicy.run(path, InstallerProgress.CONSOLE,
+				() -> invokeWithFallbacks((service, arg) -> HttpCache.read(new URL(service.meta + arg), reader), path, true));
+	}
+
+	private static String getPrefetchedProfile(String path) {
+		InstallPrefetch prefetch = InstallPrefetch.getActive();
+
+		return prefetch != null ? prefetch.getProfile(path) : null;
 	}
 
 	/**
 	 * Query and decode JSON from url, substituting Fabric Maven with fallbacks or overrides.
 	 */
 	public static Json queryJsonSubstitutedMaven(String url) throws IOException {
-		if (!url.startsWith(Reference.FABRIC_MAVEN)) {
-			return Json.read(Utils.readString(new URL(url)));
-		}
+		return RetryPolicy.run(url, InstallerProgress.CONSOLE, () -> {
+			if (!url.startsWith(Reference.FABRIC_MAVEN)) {
+				return Json.read(HttpCache.readString(new URL(url)));
+			}
 
-		String path = url.substring(Reference.FABRIC_MAVEN.length());
+			String path = url.substring(Reference.FABRIC_MAVEN.length());
 
-		return invokeWithFallbacks((service, arg) -> Json.read(Utils.readString(new URL(service.maven + arg))), path);
+			return invokeWithFallbacks((service, arg) -> Json.read(HttpCache.readString(new URL(service.maven + arg))), path, true);
+		});
+	}
+
+	/**
+	 * Read url through the {@link HttpCache}, substituting Fabric Maven with fallbacks or overrides, and hand the body
+	 * to reader as a stream.
+	 */
+	public static <T> T readSubstitutedMaven(String url, Utils.BodyReader<T> reader) throws IOException {
+		return RetryPolicy.run(url, InstallerProgress.CONSOLE, () -> {
+			if (!url.startsWith(Reference.FABRIC_MAVEN)) {
+				return HttpCache.read(new URL(url), reader);
+			}
+
+			String path = url.substring(Reference.FABRIC_MAVEN.length());
+
+			return invokeWithFallbacks((service, arg) -> HttpCache.read(new URL(service.maven + arg), reader), path, true);
+		});
+	}
+
+	/**
+	 * Read url as a string, substituting Fabric Maven with fallbacks or overrides.
+	 */
+	public static String readStringSubstitutedMaven(String url) throws IOException {
+		return RetryPolicy.run(url, InstallerProgress.CONSOLE, () -> {
+			if (!url.startsWith(Reference.FABRIC_MAVEN)) {
+				return Utils.readString(new URL(url));
+			}
+
+			String path = url.substring(Reference.FABRIC_MAVEN.length());
+
+			return invokeWithFallbacks((service, arg) -> Utils.readString(new URL(service.maven + arg)), path, true);
+		});
 	}
 
 	/**
 	 * Download url to file, substituting Fabric Maven with fallbacks or overrides.
 	 */
 	public static void downloadSubstitutedMaven(String url, Path out) throws IOException {
+		downloadSubstitutedMaven(url, out, -1, null, null, null);
+	}
+
+	/**
+	 * Download and verify url to file, substituting Fabric Maven with fallbacks or overrides and trying the preferred
+	 * service first.
+	 *
+	 * <p>Downloads aren't retried here, callers retry the whole artifact through {@link RetryPolicy}.
+	 *
+	 * @param size expected size in bytes or -1 if unknown
+	 * @param hash expected SHA-1 or SHA-256 hex string or null if unknown
+	 * @param preferred service to try first, or null to pick the healthiest
+	 * @param progress listener for the bytes of each attempt, or null
+	 * @return the SHA-1 hex string of the downloaded file
+	 */
+	public static String downloadSubstitutedMaven(String url, Path out, long size, String hash, NotebookService preferred, FileDownloader.ProgressListener progress) throws IOException {
 		if (!url.startsWith(Reference.FABRIC_MAVEN)) {
-			Utils.downloadFile(new URL(url), out);
-			return;
+			return FileDownloader.download(new URL(url), out, size, hash, progress);
 		}
 
 		String path = url.substring(Reference.FABRIC_MAVEN.length());
 
-		invokeWithFallbacks((service, arg) -> {
-			Utils.downloadFile(new URL(service.maven + arg), out);
-			return null;
-		}, path);
+		return invokeWithFallbacks((service, arg) -> {
+			// only what this service sent counts, not a resumed prefix or a download shared with another caller
+			AtomicLong received = new AtomicLong();
+			long start = System.nanoTime();
+			String ret = FileDownloader.download(new URL(service.maven + arg), out, size, hash, new FileDownloader.ProgressListener() {
+				@Override
+				public void update(long downloaded, long total) {
+					if (progress != null) progress.update(downloaded, total);
+				}
+
+				@Override
+				public void received(int bytes) {
+					received.addAndGet(bytes);
+					if (progress != null) progress.received(bytes);
+				}
+			});
+			MirrorHealth.recordThroughput(service, received.get(), System.nanoTime() - start);
+
+			return ret;
+		}, path, false, preferred);
+	}
+
+	/**
+	 * Get the services library downloads may be spread across, or an empty list if a fixed service is configured.
+	 */
+	static List<NotebookService> getDownloadServices() {
+		if (fixedService != null) return Collections.emptyList();
+
+		return Arrays.asList(Reference.FABRIC_SERVICES);
 	}
 
-	private static <A, R> R invokeWithFallbacks(Handler<A, R> handler, A arg) throws IOException {
+	/**
+	 * Invoke handler on the healthiest service first, falling back to the others in order of their score.
+	 *
+	 * @param small whether this is a small request, which can be hedged and whose duration is a meaningful latency sample
+	 */
+	private static <A, R> R invokeWithFallbacks(Handler<A, R> handler, A arg, boolean small) throws IOException {
+		return invokeWithFallbacks(handler, arg, small, null);
+	}
+
+	private static <A, R> R invokeWithFallbacks(Handler<A, R> handler, A arg, boolean small, NotebookService preferred) throws IOException {
 		if (fixedService != null) return handler.apply(fixedService, arg);
 
-		int index = activeIndex;
-		IOException exc = null;
+		String path = arg.toString();
+		List<NotebookService> services = new ArrayList<>(Reference.FABRIC_SERVICES.length);
+		int missingStatus = -1;
 
-		do {
-			NotebookService service = Reference.FABRIC_SERVICES[index];
+		for (NotebookService service : MirrorHealth.rank(Reference.FABRIC_SERVICES)) {
+			int status = MissingCache.getStatus(service, path);
 
-			try {
-				R ret = handler.apply(service, arg);
-				activeIndex = index;
+			if (status < 0) {
+				services.add(service);
+			} else {
+				missingStatus = status;
+			}
+		}
 
-				return ret;
-			} catch (IOException e) {
-				System.out.println("service "+service+" failed: "+e);
+		if (services.isEmpty()) {
+			throw new HttpStatusException(path+" was recently not found on any service: "+missingStatus, missingStatus);
+		}
+
+		if (preferred != null && services.remove(preferred)) {
+			services.add(0, preferred);
+		}
+
+		if (small && hedgePercentile > 0 && services.size() > 1) {
+			return invokeHedged(handler, arg, services);
+		}
+
+		IOException exc = null;
 
+		for (NotebookService service : services) {
+			try {
+				return invokeTracked(handler, arg, service, small);
+			} catch (IOException e) {
 				if (exc == null) {
 					exc = e;
 				} else {
 					exc.addSuppressed(e);
 				}
 			}
+		}
+
+		throw exc;
+	}
+
+	/**
+	 * Invoke handler on the best service, sending the same request to the next service whenever the running ones
+	 * haven't answered within the hedging percentile of their usual latency or failed. The first successful
+	 * response wins, the remaining requests are cancelled and their responses aborted.
+	 */
+	private static <A, R> R invokeHedged(Handler<A, R> handler, A arg, List<NotebookService> services) throws IOException {
+		CompletionService<R> completionService = new ExecutorCompletionService<>(getHedgeExecutor());
+		List<Future<R>> futures = new ArrayList<>(services.size());
+		List<Utils.RequestScope> scopes = new ArrayList<>(services.size());
+		IOException exc = null;
+		int next = 0;
+		int pending = 0;
+
+		try {
+			do {
+				if (next < services.size()) {
+					NotebookService service = services.get(next++);
+					Utils.RequestScope scope = new Utils.RequestScope();
+					scopes.add(scope);
+					futures.add(completionService.submit(() -> scope.run(() -> invokeTracked(handler, arg, service, true))));
+					pending++;
+				}
+
+				Future<R> done;
+
+				if (next < services.size()) {
+					done = completionService.poll(MirrorHealth.getLatencyPercentile(services.get(next - 1), hedgePercentile), TimeUnit.MILLISECONDS);
+					if (done == null) continue; // deadline passed, hedge with the next service
+				} else {
+					done = completionService.take();
+				}
+
+				pending--;
+
+				try {
+					return done.get();
+				} catch (ExecutionException e) {
+					IOException cause = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+
+					if (exc == null) {
+						exc = cause;
+					} else {
+						exc.addSuppressed(cause);
+					}
+				}
+			} while (pending > 0 || next < services.size());
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Interrupted while querying services");
+		} finally {
+			for (Future<R> future : futures) {
+				future.cancel(true);
+			}
 
-			index = (index + 1) % Reference.FABRIC_SERVICES.length;
-		} while (index != activeIndex);
+			// the interrupt doesn't reach reads blocked on a connection, which would keep their per-host permit
+			for (Utils.RequestScope scope : scopes) {
+				scope.abort();
+			}
+		}
 
 		throw exc;
 	}
 
+	private static <A, R> R invokeTracked(Handler<A, R> handler, A arg, NotebookService service, boolean timed) throws IOException {
+		long start = System.nanoTime();
+
+		try {
+			R ret = handler.apply(service, arg);
+			MirrorHealth.recordSuccess(service, timed ? (System.nanoTime() - start) / 1000000 : -1);
+			MissingCache.recordPresent(service, arg.toString());
+
+			return ret;
+		} catch (IOException e) {
+			if (Thread.currentThread().isInterrupted()) throw e; // cancelled hedge, not the service's fault
+
+			System.out.println("service "+service+" failed: "+e);
+
+			if (e instanceof HttpStatusException && ((HttpStatusException) e).isNotFound()) {
+				// the service works, it just doesn't have this file
+				MirrorHealth.recordNotFound(service);
+				MissingCache.recordMissing(service, arg.toString(), ((HttpStatusException) e).status);
+			} else {
+				MirrorHealth.recordFailure(service);
+			}
+
+			throw e;
+		}
+	}
+
+	private static synchronized ExecutorService getHedgeExecutor() {
+		if (hedgeExecutor == null) {
+			hedgeExecutor = Executors.newCachedThreadPool(r -> {
+				Thread thread = new Thread(r, "Service request");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+
+		return hedgeExecutor;
+	}
+
 	private interface Handler<A, R> {
 		R apply(NotebookService service, A arg) throws IOException;
 	}
@@ -117,10 +368,28 @@ public final class NotebookService {
 		if (metaUrl == null) metaUrl = Reference.DEFAULT_META_SERVER;
 		if (mavenUrl == null) mavenUrl = Reference.FABRIC_MAVEN;
 
-		activeIndex = -1;
 		fixedService = new NotebookService(metaUrl, mavenUrl);
 	}
 
+	/**
+	 * Get the meta url of the fixed service, or null if the default services are used.
+	 */
+	static String getFixedMetaUrl() {
+		return fixedService != null ? fixedService.meta : null;
+	}
+
+	/**
+	 * Enable hedging of small requests: once the running request took longer than the given percentile of the
+	 * service's recent latencies, the same request is sent to the next best service as well.
+	 *
+	 * @param percentile latency percentile in (0, 100], or a non-positive value to disable hedging
+	 */
+	public static void setHedgePercentile(double percentile) {
+		if (percentile > 100) throw new IllegalArgumentException("percentile out of range: "+percentile);
+
+		hedgePercentile = percentile;
+	}
+
 	NotebookService(String meta, String maven) {
 		this.meta = meta;
 		this.maven = maven;
@@ -0,0 +1,133 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer.util;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Merges progress updates from any number of threads and publishes the latest state on the Swing event dispatch
+ * thread, at most once per frame.
+ *
+ * <p>Updates only store the new state, so a download reporting every buffer costs a few field writes and the event
+ * queue sees one task per frame at most, however fast the updates come in.
+ */
+public final class ProgressAggregator {
+	private static final long FRAME_MS = 50;
+	private static final double RATE_SMOOTHING = 0.3; // weight of the newest throughput sample
+
+	private static ScheduledExecutorService scheduler;
+
+	private final Listener listener;
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+
+	private volatile String text;
+	private volatile long bytesDone;
+	private volatile long bytesTotal;
+
+	// only accessed from the event dispatch thread
+	private long lastPublishNanos;
+	private long lastBytesDone;
+	private double bytesPerSecond;
+
+	public ProgressAggregator(Listener listener) {
+		this.listener = listener;
+	}
+
+	public void updateProgress(String text) {
+		this.text = text;
+		schedule();
+	}
+
+	/**
+	 * Update the byte counters, total is -1 if unknown.
+	 */
+	public void updateBytes(long done, long total) {
+		bytesDone = done;
+		bytesTotal = total;
+		schedule();
+	}
+
+	/**
+	 * Drop the current state, so nothing published later overwrites what was set on the components directly.
+	 */
+	public void reset() {
+		text = null;
+		bytesDone = 0;
+		bytesTotal = 0;
+		schedule();
+	}
+
+	private void schedule() {
+		if (!scheduled.compareAndSet(false, true)) return; // the pending publish picks this update up
+
+		getScheduler().schedule(() -> SwingUtilities.invokeLater(this::publish), FRAME_MS, TimeUnit.MILLISECONDS);
+	}
+
+	private void publish() {
+		scheduled.set(false); // updates from here on schedule the next frame
+
+		long now = System.nanoTime();
+		long done = bytesDone;
+
+		if (done < lastBytesDone || lastPublishNanos == 0) { // a new batch started or the state was reset
+			bytesPerSecond = 0;
+		} else if (now > lastPublishNanos) {
+			double sample = (done - lastBytesDone) * 1e9 / (now - lastPublishNanos);
+			bytesPerSecond = bytesPerSecond == 0 ? sample : RATE_SMOOTHING * sample + (1 - RATE_SMOOTHING) * bytesPerSecond;
+		}
+
+		lastPublishNanos = now;
+		lastBytesDone = done;
+
+		listener.publish(text, done, bytesTotal, bytesPerSecond);
+	}
+
+	private static synchronized ScheduledExecutorService getScheduler() {
+		if (scheduler == null) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "Progress publisher");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+
+		return scheduler;
+	}
+
+	public interface Listener {
+		/**
+		 * Show the progress, called on the event dispatch thread.
+		 *
+		 * @param text latest status text, or null if there was none since the last reset
+		 * @param bytesPerSecond smoothed throughput, or 0 if not known yet
+		 */
+		void publish(String text, long bytesDone, long bytesTotal, double bytesPerSecond);
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.file.FileSystemException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Retries fetching an artifact after transient failures, with exponential backoff and jitter between the attempts.
+ */
+public final class RetryPolicy {
+	private static int maxAttempts = 4;
+	private static long baseDelayMs = 500;
+	private static long maxDelayMs = 15000;
+
+	/**
+	 * Set how often an artifact is tried in total, 1 disables retries.
+	 */
+	public static void setMaxAttempts(int maxAttempts) {
+		if (maxAttempts < 1) throw new IllegalArgumentException("attempt count must be at least 1: " + maxAttempts);
+
+		RetryPolicy.maxAttempts = maxAttempts;
+	}
+
+	/**
+	 * Set the delay before the first retry, doubled for every further one up to maxDelayMs.
+	 */
+	public static void setBackoff(long baseDelayMs, long maxDelayMs) {
+		if (baseDelayMs < 0 || maxDelayMs < baseDelayMs) throw new IllegalArgumentException("invalid backoff: " + baseDelayMs + ", " + maxDelayMs);
+
+		RetryPolicy.baseDelayMs = baseDelayMs;
+		RetryPolicy.maxDelayMs = maxDelayMs;
+	}
+
+	/**
+	 * Run action until it succeeds, fails with a permanent error or runs out of attempts.
+	 *
+	 * @param name what is being fetched, for the progress messages
+	 */
+	public static <T> T run(String name, InstallerProgress progress, Action<T> action) throws IOException {
+		for (int attempt = 1; ; attempt++) {
+			try {
+				return action.run();
+			} catch (IOException e) {
+				if (attempt >= maxAttempts || !isRetryable(e)) throw e;
+
+				long delayMs = getDelay(attempt);
+				String reason = e.getMessage() != null ? e.getMessage() : e.toString();
+				progress.updateProgress(new MessageFormat(Utils.BUNDLE.getString("progress.retry")).format(new Object[]{name, reason, delayMs / 1000.0, attempt + 1, maxAttempts}));
+
+				try {
+					Thread.sleep(delayMs);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					InterruptedIOException exc = new InterruptedIOException("Interrupted while waiting to retry "+name);
+					exc.addSuppressed(e);
+					throw exc;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Decide whether an error may go away on its own. A failure that went through the service fallbacks carries the
+	 * other services' errors as suppressed: any server asking to come back later makes it retryable, any server
+	 * saying the file doesn't exist makes it permanent, otherwise it depends on the kind of I/O error.
+	 */
+	static boolean isRetryable(IOException e) {
+		List<Throwable> failures = new ArrayList<>();
+		failures.add(e);
+		failures.addAll(Arrays.asList(e.getSuppressed()));
+
+		boolean ioRetryable = false;
+
+		for (Throwable t : failures) {
+			if (t instanceof HttpStatusException && isRetryableStatus(((HttpStatusException) t).status)) return true;
+		}
+
+		for (Throwable t : failures) {
+			if (t instanceof HttpStatusException) return false;
+
+			if (t instanceof IOException
+					&& !(t instanceof FileSystemException) // local file problems
+					&& (!(t instanceof InterruptedIOException) || t instanceof SocketTimeoutException)) {
+				ioRetryable = true;
+			}
+		}
+
+		return ioRetryable;
+	}
+
+	static boolean isRetryableStatus(int status) {
+		switch (status) {
+		case 408: // request timeout
+		case 425: // too early
+		case 429: // too many requests
+		case 500:
+		case 502:
+		case 503:
+		case 504:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Get the delay before the given retry: half of it is the exponential backoff, the other half random so clients
+	 * that failed together don't come back together.
+	 */
+	static long getDelay(int attempt) {
+		long backoff = Math.min(maxDelayMs, baseDelayMs << Math.min(attempt - 1, 30));
+
+		return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+	}
+
+	public interface Action<T> {
+		T run() throws IOException;
+	}
+
+	private RetryPolicy() { }
+}
@@ -0,0 +1,112 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.file.FileSystemException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Collapses concurrent fetches of the same key into one: the first caller runs the fetch, callers arriving while it
+ * is in flight wait for it and get the same result, or a copy of the same exception. Nothing is kept once the fetch
+ * completed.
+ */
+final class SingleFlight<K, V> {
+	private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+	V get(K key, RetryPolicy.Action<V> fetch) throws IOException {
+		CompletableFuture<V> future = new CompletableFuture<>();
+		CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+
+		if (existing != null) return await(existing);
+
+		try {
+			V ret = fetch.run();
+			future.complete(ret);
+
+			return ret;
+		} catch (IOException e) {
+			// the caller may add suppressed exceptions to e, the waiters copy from a snapshot nobody else sees
+			future.completeExceptionally(copy(e));
+			throw e;
+		} catch (Throwable t) {
+			future.completeExceptionally(t);
+			throw t;
+		} finally {
+			inFlight.remove(key, future);
+		}
+	}
+
+	private static <V> V await(CompletableFuture<V> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a concurrent fetch");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+
+			// a copy per waiter, so their callers' suppressed exceptions don't leak into each other
+			if (cause instanceof IOException) throw copy((IOException) cause);
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * Copy e with the original as cause, keeping the types that status and retry checks look at.
+	 */
+	private static IOException copy(IOException e) {
+		IOException ret;
+
+		if (e instanceof HttpStatusException) {
+			ret = new HttpStatusException(e.getMessage(), ((HttpStatusException) e).status);
+		} else if (e instanceof SocketTimeoutException) {
+			ret = new SocketTimeoutException(e.getMessage());
+		} else if (e instanceof InterruptedIOException) {
+			ret = new InterruptedIOException(e.getMessage());
+		} else if (e instanceof FileSystemException) {
+			FileSystemException fse = (FileSystemException) e;
+			ret = new FileSystemException(fse.getFile(), fse.getOtherFile(), fse.getReason());
+		} else {
+			ret = new IOException(e.getMessage());
+		}
+
+		ret.initCause(e);
+
+		for (Throwable suppressed : e.getSuppressed()) {
+			ret.addSuppressed(suppressed);
+		}
+
+		return ret;
+	}
+}
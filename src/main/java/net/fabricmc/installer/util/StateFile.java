@@ -0,0 +1,118 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Properties file in the cache directory for state that outlives the process, shared by all installer processes.
+ *
+ * <p>Users keep their state in memory and {@link #update} the file once when the process exits. The update reads the
+ * file again under the cache lock, so entries other processes stored in the meantime are merged instead of lost.
+ */
+final class StateFile {
+	private final String name;
+	private final String description;
+
+	StateFile(String name, String description) {
+		this.name = name;
+		this.description = description;
+	}
+
+	/**
+	 * Get the file in the current cache directory, or null if the cache is disabled.
+	 */
+	Path getPath() {
+		Path cacheDir = ArtifactCache.getCacheDir();
+
+		return cacheDir != null ? cacheDir.resolve(name) : null;
+	}
+
+	/**
+	 * Read the stored state, empty if there is none or it can't be read.
+	 */
+	Properties read() {
+		Path file = getPath();
+
+		return file != null ? read(file) : new Properties();
+	}
+
+	/**
+	 * Run action once the process exits.
+	 */
+	void onExit(Runnable action) {
+		Runtime.getRuntime().addShutdownHook(new Thread(action, "Save " + description));
+	}
+
+	/**
+	 * Let merger apply this process' changes to the currently stored state and store the result.
+	 */
+	void update(Consumer<Properties> merger) {
+		Path file = getPath();
+		if (file == null) return;
+
+		try {
+			ArtifactCache.withLock(name, () -> {
+				Properties properties = read(file);
+				merger.accept(properties);
+
+				Files.createDirectories(file.getParent());
+				Path tmp = file.resolveSibling(name + "." + UUID.randomUUID() + ".tmp");
+
+				try (OutputStream os = Files.newOutputStream(tmp)) {
+					properties.store(os, null);
+				}
+
+				Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			});
+		} catch (IOException e) {
+			System.out.println("Failed to store "+description+": "+e);
+		}
+	}
+
+	private Properties read(Path file) {
+		Properties properties = new Properties();
+
+		try (InputStream is = Files.newInputStream(file)) {
+			properties.load(is);
+		} catch (NoSuchFileException e) {
+			// nothing stored yet
+		} catch (IOException | IllegalArgumentException e) {
+			System.out.println("Failed to read "+description+": "+e);
+			return new Properties();
+		}
+
+		return properties;
+	}
+}
@@ -0,0 +1,219 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits applied to every HTTP request: a token bucket shared by all response bodies caps the total bandwidth and a
+ * budget of concurrent requests per host caps the connections.
+ */
+public final class TransferLimits {
+	private static final int DEFAULT_MAX_PER_HOST = 4;
+
+	private static int maxPerHost = DEFAULT_MAX_PER_HOST;
+	private static final Map<String, Semaphore> HOST_PERMITS = new HashMap<>();
+
+	private static final Object BUCKET_LOCK = new Object();
+	private static volatile long bytesPerSecond; // 0 for unlimited
+	private static double tokens;
+	private static long lastRefill = System.nanoTime();
+	private static final AtomicInteger openResponses = new AtomicInteger();
+
+	/**
+	 * Cap the combined download bandwidth, 0 removes the limit.
+	 */
+	public static void setMaxBandwidth(long bytesPerSecond) {
+		if (bytesPerSecond < 0) throw new IllegalArgumentException("negative bandwidth: " + bytesPerSecond);
+
+		synchronized (BUCKET_LOCK) {
+			TransferLimits.bytesPerSecond = bytesPerSecond;
+			tokens = bytesPerSecond; // allow a burst of one second
+			lastRefill = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Cap the number of concurrent requests to each host. Must be set before any request is made.
+	 */
+	public static synchronized void setMaxConnectionsPerHost(int maxPerHost) {
+		if (maxPerHost < 1) throw new IllegalArgumentException("per-host connection cap must be at least 1: " + maxPerHost);
+
+		TransferLimits.maxPerHost = maxPerHost;
+		HOST_PERMITS.clear();
+	}
+
+	public static synchronized int getMaxConnectionsPerHost() {
+		return maxPerHost;
+	}
+
+	/**
+	 * Send a request through transport once the host has a free connection, the connection is released when the
+	 * response is closed.
+	 */
+	static HttpTransport.Response open(HttpTransport transport, URL url, Map<String, String> headers) throws IOException {
+		Semaphore permits = getHostPermits(url.getHost());
+
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a connection to "+url.getHost());
+		}
+
+		HttpTransport.Response response;
+
+		try {
+			response = transport.get(url, headers);
+		} catch (Throwable t) {
+			permits.release();
+			throw t;
+		}
+
+		openResponses.incrementAndGet();
+
+		return new LimitedResponse(response, permits);
+	}
+
+	private static synchronized Semaphore getHostPermits(String host) {
+		return HOST_PERMITS.computeIfAbsent(host, h -> new Semaphore(maxPerHost, true));
+	}
+
+	/**
+	 * Get the bandwidth each open response gets if the limit is split evenly, or Long.MAX_VALUE without a limit.
+	 */
+	static long getBandwidthShare() {
+		long limit = bytesPerSecond;
+
+		return limit > 0 ? limit / Math.max(1, openResponses.get()) : Long.MAX_VALUE;
+	}
+
+	/**
+	 * Take bytes from the bucket, waiting for it to refill if they exceed what is left.
+	 */
+	static void acquireBandwidth(int bytes) throws InterruptedIOException {
+		long waitNanos;
+
+		synchronized (BUCKET_LOCK) {
+			if (bytesPerSecond <= 0) return;
+
+			long now = System.nanoTime();
+			tokens = Math.min(bytesPerSecond, tokens + (now - lastRefill) * bytesPerSecond / 1e9);
+			lastRefill = now;
+			// going into debt makes later callers wait for this read as well, which keeps the average exact
+			tokens -= bytes;
+			waitNanos = tokens < 0 ? (long) (-tokens * 1e9 / bytesPerSecond) : 0;
+		}
+
+		if (waitNanos > 0) {
+			try {
+				Thread.sleep(waitNanos / 1000000, (int) (waitNanos % 1000000));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while throttling download");
+			}
+		}
+	}
+
+	private static final class LimitedResponse implements HttpTransport.Response {
+		private final HttpTransport.Response response;
+		private final Semaphore permits;
+		private InputStream body;
+		private boolean closed;
+
+		LimitedResponse(HttpTransport.Response response, Semaphore permits) {
+			this.response = response;
+			this.permits = permits;
+		}
+
+		@Override
+		public int getStatus() {
+			return response.getStatus();
+		}
+
+		@Override
+		public String getHeader(String name) {
+			return response.getHeader(name);
+		}
+
+		@Override
+		public synchronized InputStream getBody() throws IOException {
+			if (body == null) body = new ThrottledInputStream(response.getBody());
+
+			return body;
+		}
+
+		@Override
+		public void abort() {
+			response.abort();
+		}
+
+		@Override
+		public synchronized void close() throws IOException {
+			if (closed) return;
+
+			closed = true;
+
+			try {
+				response.close();
+			} finally {
+				openResponses.decrementAndGet();
+				permits.release();
+			}
+		}
+	}
+
+	private static final class ThrottledInputStream extends FilterInputStream {
+		ThrottledInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int ret = super.read();
+			if (ret >= 0) acquireBandwidth(1);
+
+			return ret;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int ret = super.read(b, off, len);
+			if (ret > 0) acquireBandwidth(ret);
+
+			return ret;
+		}
+	}
+
+	private TransferLimits() { }
+}
@@ -0,0 +1,146 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * {@link HttpTransport} based on {@link HttpURLConnection}, which keeps idle connections in the JVM wide keep-alive
+ * cache.
+ */
+final class UrlConnectionTransport implements HttpTransport {
+	private static final int MAX_DRAIN = 64 * 1024; // error bodies up to this size are read to keep the connection
+
+	private final int connectTimeoutMs;
+	private final int readTimeoutMs;
+
+	UrlConnectionTransport(int connectTimeoutMs, int readTimeoutMs) {
+		this.connectTimeoutMs = connectTimeoutMs;
+		this.readTimeoutMs = readTimeoutMs;
+	}
+
+	@Override
+	public Response get(URL url, Map<String, String> headers) throws IOException {
+		HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+		conn.setConnectTimeout(connectTimeoutMs);
+		conn.setReadTimeout(readTimeoutMs);
+
+		for (Map.Entry<String, String> header : headers.entrySet()) {
+			conn.setRequestProperty(header.getKey(), header.getValue());
+		}
+
+		conn.connect();
+		int status = conn.getResponseCode();
+
+		return new Response() {
+			private InputStream body;
+			private volatile boolean aborted;
+
+			@Override
+			public int getStatus() {
+				return status;
+			}
+
+			@Override
+			public String getHeader(String name) {
+				return conn.getHeaderField(name);
+			}
+
+			@Override
+			public synchronized InputStream getBody() throws IOException {
+				if (aborted) throw new IOException("Request to "+url+" aborted");
+
+				if (body == null) {
+					InputStream is = status < 400 ? conn.getInputStream() : conn.getErrorStream();
+					body = is != null ? new AbortableInputStream(is) : new ByteArrayInputStream(new byte[0]);
+				}
+
+				return body;
+			}
+
+			@Override
+			public void abort() {
+				aborted = true;
+
+				synchronized (this) {
+					// disconnect blocks on a stream another thread is reading, that reader fails on its next chunk instead
+					if (body == null) conn.disconnect();
+				}
+			}
+
+			@Override
+			public void close() throws IOException {
+				if (aborted) {
+					conn.disconnect();
+					return;
+				}
+
+				try (InputStream is = getBody()) {
+					if (status >= 300) {
+						byte[] buffer = new byte[4096];
+						long drained = 0;
+						int len;
+
+						while (drained < MAX_DRAIN && (len = is.read(buffer)) >= 0) {
+							drained += len;
+						}
+					}
+				}
+			}
+
+			final class AbortableInputStream extends FilterInputStream {
+				AbortableInputStream(InputStream in) {
+					super(in);
+				}
+
+				@Override
+				public int read() throws IOException {
+					int ret = super.read();
+					checkAborted();
+
+					return ret;
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len) throws IOException {
+					int ret = super.read(b, off, len);
+					checkAborted();
+
+					return ret;
+				}
+
+				private void checkAborted() throws IOException {
+					if (aborted) throw new IOException("Request to "+url+" aborted");
+				}
+			}
+		};
+	}
+}
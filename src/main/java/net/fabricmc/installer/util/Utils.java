@@ -27,24 +27,27 @@ package net.fabricmc.installer.util;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.PropertyResourceBundle;
 import java.util.ResourceBundle;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
 
 public class Utils {
 	public static final DateFormat ISO_8601 = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ");
@@ -94,12 +97,37 @@ public class Utils {
 		return dir.toAbsolutePath().normalize();
 	}
 
+	/**
+	 * Read url as a string, concurrent calls for the same url share one request.
+	 */
 	public static String readString(URL url) throws IOException {
-		try (InputStream is = openUrl(url)) {
-			return readString(is);
+		return stringFetches.get(url.toString(), () -> read(url, Utils::readString));
+	}
+
+	/**
+	 * Read url, handing the body to reader as a stream.
+	 */
+	public static <T> T read(URL url, BodyReader<T> reader) throws IOException {
+		try (HttpTransport.Response response = openHttp(url, ACCEPT_GZIP)) {
+			if (response.getStatus() < 200 || response.getStatus() >= 300) throw new HttpStatusException(url, response.getStatus());
+
+			return reader.read(getBody(response));
 		}
 	}
 
+	/**
+	 * Get a response body, decoding gzip content encoding.
+	 */
+	static InputStream getBody(HttpTransport.Response response) throws IOException {
+		InputStream is = response.getBody();
+
+		if ("gzip".equalsIgnoreCase(response.getHeader("Content-Encoding"))) {
+			is = new GZIPInputStream(is);
+		}
+
+		return is;
+	}
+
 	public static String readString(Path path) throws IOException {
 		return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
 	}
@@ -129,33 +157,103 @@ public class Utils {
 	}
 
 	public static void downloadFile(URL url, Path path) throws IOException {
-		try (InputStream in = openUrl(url)) {
-			Files.createDirectories(path.getParent());
-			Files.copy(in, path, StandardCopyOption.REPLACE_EXISTING);
-		} catch (Throwable t) {
-			try {
-				Files.deleteIfExists(path);
-			} catch (Throwable t2) {
-				t.addSuppressed(t2);
-			}
+		RetryPolicy.run(url.toString(), InstallerProgress.CONSOLE, () -> FileDownloader.download(url, path, -1, null, null));
+	}
+
+	static final Map<String, String> ACCEPT_GZIP = Collections.singletonMap("Accept-Encoding", "gzip");
+
+	private static int httpConnectTimeoutMs = 8000;
+	private static int httpReadTimeoutMs = 8000;
+	private static boolean preferHttpClient = true;
+	private static HttpTransport httpTransport;
+	private static final SingleFlight<String, String> stringFetches = new SingleFlight<>();
+
+	/**
+	 * Set the transport for all HTTP requests, or null to use the default one.
+	 */
+	public static synchronized void setHttpTransport(HttpTransport transport) {
+		httpTransport = transport;
+	}
+
+	/**
+	 * Set the timeouts of the default transport, replacing a custom one.
+	 */
+	public static synchronized void setHttpTimeouts(int connectTimeoutMs, int readTimeoutMs) {
+		if (connectTimeoutMs < 0 || readTimeoutMs < 0) throw new IllegalArgumentException("negative timeout: " + Math.min(connectTimeoutMs, readTimeoutMs));
+
+		httpConnectTimeoutMs = connectTimeoutMs;
+		httpReadTimeoutMs = readTimeoutMs;
+		httpTransport = null;
+	}
 
-			throw t;
+	/**
+	 * Set whether the default transport uses java.net.http.HttpClient where available, or HttpURLConnection.
+	 */
+	public static synchronized void setPreferHttpClient(boolean prefer) {
+		preferHttpClient = prefer;
+		httpTransport = null;
+	}
+
+	static synchronized HttpTransport getHttpTransport() {
+		if (httpTransport == null) {
+			if (preferHttpClient) httpTransport = JdkHttpClientTransport.create(httpConnectTimeoutMs, httpReadTimeoutMs);
+			if (httpTransport == null) httpTransport = new UrlConnectionTransport(httpConnectTimeoutMs, httpReadTimeoutMs);
 		}
+
+		return httpTransport;
+	}
+
+	static HttpTransport.Response openHttp(URL url, Map<String, String> headers) throws IOException {
+		HttpTransport.Response ret = TransferLimits.open(getHttpTransport(), url, headers);
+		RequestScope scope = RequestScope.current.get();
+		if (scope != null) scope.add(ret);
+
+		return ret;
 	}
 
-	private static final int HTTP_TIMEOUT_MS = 8000;
+	/**
+	 * Collects the responses a task opens on its thread, so another thread can abort them. Blocking reads ignore
+	 * interrupts, an abort makes them fail right away and frees the connection.
+	 */
+	static final class RequestScope {
+		private static final ThreadLocal<RequestScope> current = new ThreadLocal<>();
 
-	private static InputStream openUrl(URL url) throws IOException {
-		HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+		private final List<HttpTransport.Response> responses = new ArrayList<>();
+		private boolean aborted;
+		private boolean finished;
 
-		conn.setConnectTimeout(HTTP_TIMEOUT_MS);
-		conn.setReadTimeout(HTTP_TIMEOUT_MS);
-		conn.connect();
+		<R> R run(RetryPolicy.Action<R> action) throws IOException {
+			current.set(this);
 
-		int responseCode = conn.getResponseCode();
-		if (responseCode < 200 || responseCode >= 300) throw new IOException("HTTP request to "+url+" failed: "+responseCode);
+			try {
+				return action.run();
+			} finally {
+				current.remove();
 
-		return conn.getInputStream();
+				synchronized (this) {
+					finished = true;
+					responses.clear();
+				}
+			}
+		}
+
+		private synchronized void add(HttpTransport.Response response) {
+			if (aborted) {
+				response.abort();
+			} else {
+				responses.add(response);
+			}
+		}
+
+		/**
+		 * Abort the responses the task opened and those it opens from now on, nothing happens once it finished.
+		 */
+		synchronized void abort() {
+			if (finished || aborted) return;
+
+			aborted = true;
+			responses.forEach(HttpTransport.Response::abort);
+		}
 	}
 
 	public static String getProfileIcon() {
@@ -181,8 +279,16 @@ public class Utils {
 		return bytesToHex(sha1(path));
 	}
 
+	public static byte[] sha1(byte[] data) {
+		return createDigest("SHA-1").digest(data);
+	}
+
 	public static byte[] sha1(Path path) throws IOException {
-		MessageDigest digest = sha1Digest();
+		return digest(path, "SHA-1");
+	}
+
+	public static byte[] digest(Path path, String algorithm) throws IOException {
+		MessageDigest digest = createDigest(algorithm);
 
 		try (InputStream is = Files.newInputStream(path)) {
 			byte[] buffer = new byte[64 * 1024];
@@ -196,9 +302,9 @@ public class Utils {
 		return digest.digest();
 	}
 
-	private static MessageDigest sha1Digest() {
+	static MessageDigest createDigest(String algorithm) {
 		try {
-			return MessageDigest.getInstance("SHA-1");
+			return MessageDigest.getInstance(algorithm);
 		} catch (NoSuchAlgorithmException e) {
 			throw new RuntimeException("Something has gone really wrong", e);
 		}
@@ -276,4 +382,8 @@ public class Utils {
 
 		return Integer.compare(partsA.length, partsB.length); // compare part count
 	}
+
+	public interface BodyReader<T> {
+		T read(InputStream is) throws IOException;
+	}
 }
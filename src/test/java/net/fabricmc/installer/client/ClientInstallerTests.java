@@ -0,0 +1,138 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.fabricmc.installer.util.Library;
+
+public class ClientInstallerTests {
+	private static final String PROFILE = "{\n"
+			+ "  \"id\": \"notebook-loader-1.0-1.20\",\n"
+			+ "  \"arguments\": {\"game\": [], \"jvm\": [\"-Dfoo=\\\"bar\\\"\"]},\n"
+			+ "  \"libraries\": [\n"
+			+ "    {\"name\": \"org.ow2.asm:asm:9.6\", \"url\": \"https://maven.example.com/\", \"size\": 123, \"sha1\": \"aa\", \"md5\": \"bb\"},\n"
+			+ "    {\"url\": \"https://maven.example.com/\", \"name\": \"net.fabricmc:sponge-mixin:0.12\"}\n"
+			+ "  ],\n"
+			+ "  \"mainClass\": \"net.fabricmc.loader.impl.launch.knot.KnotClient\"\n"
+			+ "}\n\n";
+
+	private Path dir;
+	private Path profileJson;
+
+	@Before
+	public void setup() throws IOException {
+		dir = Files.createTempDirectory("notebook-installer-test");
+		profileJson = dir.resolve("profile.json");
+	}
+
+	@After
+	public void cleanup() throws IOException {
+		try (Stream<Path> files = Files.walk(dir)) {
+			// children before their directories
+			for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+				Files.delete(file);
+			}
+		}
+	}
+
+	@Test
+	public void testWriteProfile() throws IOException {
+		List<Library> libraries = ClientInstaller.writeProfile(stream(PROFILE), profileJson);
+
+		// the profile on disk is what meta served, byte for byte
+		Assert.assertEquals(PROFILE, new String(Files.readAllBytes(profileJson), StandardCharsets.UTF_8));
+
+		Assert.assertEquals(2, libraries.size());
+		Assert.assertEquals("org.ow2.asm:asm:9.6", libraries.get(0).name);
+		Assert.assertEquals(123, libraries.get(0).size);
+		Assert.assertEquals("aa", libraries.get(0).sha1);
+		Assert.assertEquals("net.fabricmc:sponge-mixin:0.12", libraries.get(1).name);
+		Assert.assertEquals(-1, libraries.get(1).size);
+		Assert.assertNull(libraries.get(1).sha1);
+		assertNoTempFiles();
+	}
+
+	@Test
+	public void testWithoutLibraries() throws IOException {
+		try {
+			ClientInstaller.writeProfile(stream("{\"id\": \"x\"}"), profileJson);
+			Assert.fail("a profile without libraries was accepted");
+		} catch (IOException e) {
+			// expected
+		}
+
+		Assert.assertFalse(Files.exists(profileJson));
+		assertNoTempFiles();
+	}
+
+	@Test
+	public void testFailedRead() throws IOException {
+		Files.write(profileJson, "{}".getBytes(StandardCharsets.UTF_8));
+
+		InputStream failing = new InputStream() {
+			@Override
+			public int read() throws IOException {
+				throw new IOException("connection reset");
+			}
+		};
+
+		try {
+			ClientInstaller.writeProfile(new SequenceInputStream(stream(PROFILE.substring(0, 100)), failing), profileJson);
+			Assert.fail("a partial profile was accepted");
+		} catch (IOException e) {
+			// expected
+		}
+
+		// the previous profile stays until a complete one replaces it
+		Assert.assertEquals("{}", new String(Files.readAllBytes(profileJson), StandardCharsets.UTF_8));
+		assertNoTempFiles();
+	}
+
+	private void assertNoTempFiles() throws IOException {
+		try (Stream<Path> files = Files.list(dir)) {
+			Assert.assertFalse(files.anyMatch(file -> file.toString().endsWith(".tmp")));
+		}
+	}
+
+	private static InputStream stream(String s) {
+		return new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer.test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.fabricmc.installer.util.ArtifactCache;
+import net.fabricmc.installer.util.Utils;
+
+public class ArtifactCacheTests {
+	private final AtomicInteger downloads = new AtomicInteger();
+	private Path previousCacheDir;
+	private Path cacheDir;
+	private Path dir;
+
+	@Before
+	public void setup() throws IOException {
+		previousCacheDir = ArtifactCache.getCacheDir();
+		cacheDir = TestFiles.createTempDir();
+		dir = TestFiles.createTempDir();
+		ArtifactCache.setCacheDir(cacheDir);
+	}
+
+	@After
+	public void cleanup() throws IOException {
+		ArtifactCache.setCacheDir(previousCacheDir);
+		ArtifactCache.setMaxSize(1024L * 1024 * 1024);
+		TestFiles.delete(cacheDir);
+		TestFiles.delete(dir);
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		byte[] data = createData("a", 1000);
+		String sha1 = Utils.bytesToHex(Utils.sha1(data));
+
+		ArtifactCache.fetch("com/example/a.jar", null, dir.resolve("first.jar"), out -> download(out, data));
+		Assert.assertEquals(sha1, ArtifactCache.getIndexedSha1("com/example/a.jar"));
+
+		// without a checksum the index finds the cached object
+		ArtifactCache.fetch("com/example/a.jar", null, dir.resolve("second.jar"), out -> download(out, data));
+		Assert.assertEquals(1, downloads.get());
+		Assert.assertArrayEquals(data, Files.readAllBytes(dir.resolve("second.jar")));
+
+		// installed files are copies, changing one leaves the cache alone
+		Files.write(dir.resolve("first.jar"), new byte[1]);
+		ArtifactCache.fetch("com/example/a.jar", sha1, dir.resolve("third.jar"), out -> download(out, data));
+		Assert.assertEquals(1, downloads.get());
+		Assert.assertArrayEquals(data, Files.readAllBytes(dir.resolve("third.jar")));
+	}
+
+	@Test
+	public void testChecksumMismatch() throws IOException {
+		byte[] data = createData("a", 1000);
+
+		try {
+			ArtifactCache.fetch("com/example/a.jar", Utils.bytesToHex(Utils.sha1(new byte[1])), dir.resolve("a.jar"), out -> download(out, data));
+			Assert.fail("an artifact with the wrong checksum was accepted");
+		} catch (IOException e) {
+			// expected
+		}
+
+		Assert.assertFalse(Files.exists(dir.resolve("a.jar")));
+		Assert.assertNull(ArtifactCache.getIndexedSha1("com/example/a.jar"));
+	}
+
+	@Test
+	public void testEviction() throws IOException {
+		ArtifactCache.setMaxSize(2500);
+		byte[] a = createData("a", 1000);
+		byte[] b = createData("b", 1000);
+		byte[] c = createData("c", 1000);
+
+		ArtifactCache.fetch("com/example/a.jar", null, dir.resolve("a.jar"), out -> download(out, a));
+		ArtifactCache.fetch("com/example/b.jar", null, dir.resolve("b.jar"), out -> download(out, b));
+		// the file system may not tell apart modification times this close
+		setLastUsed(a, 1000);
+		setLastUsed(b, 2000);
+		ArtifactCache.fetch("com/example/c.jar", null, dir.resolve("c.jar"), out -> download(out, c));
+		Assert.assertEquals(3, downloads.get());
+
+		// a was used least recently and has to go to fit c
+		ArtifactCache.fetch("com/example/c.jar", null, dir.resolve("c2.jar"), out -> download(out, c));
+		ArtifactCache.fetch("com/example/b.jar", null, dir.resolve("b2.jar"), out -> download(out, b));
+		Assert.assertEquals(3, downloads.get());
+		ArtifactCache.fetch("com/example/a.jar", null, dir.resolve("a2.jar"), out -> download(out, a));
+		Assert.assertEquals(4, downloads.get());
+		Assert.assertArrayEquals(a, Files.readAllBytes(dir.resolve("a2.jar")));
+	}
+
+	private String download(Path out, byte[] data) throws IOException {
+		downloads.incrementAndGet();
+		Files.write(out, data);
+
+		return null;
+	}
+
+	private void setLastUsed(byte[] data, long time) throws IOException {
+		String sha1 = Utils.bytesToHex(Utils.sha1(data));
+
+		try (Stream<Path> files = Files.walk(cacheDir.resolve("objects"))) {
+			Path object = files.filter(file -> file.getFileName().toString().equals(sha1)).findFirst().orElseThrow(() -> new AssertionError("no object for " + sha1));
+			Files.setLastModifiedTime(object, FileTime.fromMillis(time));
+		}
+	}
+
+	private static byte[] createData(String seed, int size) {
+		byte[] ret = new byte[size];
+		byte[] bytes = seed.getBytes(StandardCharsets.UTF_8);
+
+		for (int i = 0; i < size; i++) {
+			ret[i] = (byte) (bytes[i % bytes.length] + i);
+		}
+
+		return ret;
+	}
+}
@@ -0,0 +1,237 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.fabricmc.installer.util.HttpTransport;
+
+/**
+ * Serves fixed bodies by url from memory, answering everything else with 404.
+ */
+final class FakeHttpTransport implements HttpTransport {
+	private final Map<String, byte[]> files = new HashMap<>();
+	private final Map<String, String> etags = new HashMap<>();
+	final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+	final List<String> ranges = Collections.synchronizedList(new ArrayList<>());
+	volatile boolean ignoreRanges;
+	private long failAfter = -1;
+	private boolean stall;
+	private int failStatus = -1;
+
+	FakeHttpTransport serve(String url, byte[] data) {
+		files.put(url, data);
+		return this;
+	}
+
+	/**
+	 * Send an ETag with the url's responses and answer 304 to requests that already have it.
+	 */
+	FakeHttpTransport etag(String url, String etag) {
+		etags.put(url, etag);
+		return this;
+	}
+
+	/**
+	 * Make the body of the next response fail after the given number of bytes.
+	 */
+	synchronized void failNextAfter(long bytes) {
+		failAfter = bytes;
+		stall = false;
+	}
+
+	/**
+	 * Make the body of the next response stop after the given number of bytes, blocking further reads until the
+	 * response is aborted.
+	 */
+	synchronized void stallNextAfter(long bytes) {
+		failAfter = bytes;
+		stall = true;
+	}
+
+	/**
+	 * Answer the next request for a served url with the given status and no body.
+	 */
+	synchronized void failNextWith(int status) {
+		failStatus = status;
+	}
+
+	@Override
+	public Response get(URL url, Map<String, String> headers) {
+		requests.add(url.toString());
+		byte[] data = files.get(url.toString());
+		if (data == null) return new FakeResponse(404, new byte[0], Collections.emptyMap(), -1, false);
+
+		String range = headers.get("Range");
+		ranges.add(range);
+
+		synchronized (this) {
+			if (failStatus >= 0) {
+				int status = failStatus;
+				failStatus = -1;
+
+				return new FakeResponse(status, new byte[0], Collections.emptyMap(), -1, false);
+			}
+		}
+
+		Map<String, String> responseHeaders = new HashMap<>();
+		String etag = etags.get(url.toString());
+
+		if (etag != null) {
+			if (etag.equals(headers.get("If-None-Match"))) return new FakeResponse(304, new byte[0], Collections.emptyMap(), -1, false);
+
+			responseHeaders.put("ETag", etag);
+		}
+
+		int status = 200;
+		int start = 0;
+		int end = data.length; // exclusive
+
+		if (range != null && !ignoreRanges) {
+			// bytes=<start>-<end>
+			String[] bounds = range.substring("bytes=".length()).split("-");
+			start = Integer.parseInt(bounds[0]);
+			end = bounds.length > 1 ? Integer.parseInt(bounds[1]) + 1 : data.length;
+			status = 206;
+			responseHeaders.put("Content-Range", "bytes " + start + "-" + (end - 1) + "/" + data.length);
+		}
+
+		long fail;
+		boolean stallBody;
+
+		synchronized (this) {
+			fail = failAfter;
+			stallBody = stall;
+			failAfter = -1;
+			stall = false;
+		}
+
+		return new FakeResponse(status, Arrays.copyOfRange(data, start, end), responseHeaders, fail, stallBody);
+	}
+
+	private static final class FakeResponse implements Response {
+		private final int status;
+		private final byte[] body;
+		private final Map<String, String> headers;
+		private final CountDownLatch aborted = new CountDownLatch(1);
+		private final InputStream is;
+
+		FakeResponse(int status, byte[] body, Map<String, String> headers, long failAfter, boolean stall) {
+			this.status = status;
+			this.body = body;
+			this.headers = headers;
+			this.is = failAfter < 0 ? new ByteArrayInputStream(body) : new FailingInputStream(new ByteArrayInputStream(body), failAfter, stall ? aborted : null);
+		}
+
+		@Override
+		public int getStatus() {
+			return status;
+		}
+
+		@Override
+		public String getHeader(String name) {
+			if (name.equalsIgnoreCase("Content-Length")) return Integer.toString(body.length);
+
+			return headers.get(name);
+		}
+
+		@Override
+		public InputStream getBody() {
+			return is;
+		}
+
+		@Override
+		public void abort() {
+			aborted.countDown();
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	private static final class FailingInputStream extends FilterInputStream {
+		private final CountDownLatch aborted;
+		private long remaining;
+
+		/**
+		 * @param aborted if not null, block once the bytes are used up until it is released
+		 */
+		FailingInputStream(InputStream in, long failAfter, CountDownLatch aborted) {
+			super(in);
+			this.remaining = failAfter;
+			this.aborted = aborted;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (remaining <= 0) fail();
+
+			remaining--;
+			return super.read();
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining <= 0) fail();
+
+			int ret = super.read(b, off, (int) Math.min(len, remaining));
+			if (ret > 0) remaining -= ret;
+
+			return ret;
+		}
+
+		private void fail() throws IOException {
+			if (aborted == null) throw new IOException("connection reset");
+
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+
+			// like a blocked socket read, only an abort or the read timeout end it
+			while (aborted.getCount() > 0) {
+				if (System.nanoTime() > deadline) throw new IOException("read timed out");
+
+				try {
+					aborted.await(100, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					// ignored
+				}
+			}
+
+			throw new IOException("aborted");
+		}
+	}
+}
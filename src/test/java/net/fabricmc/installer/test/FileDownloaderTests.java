@@ -0,0 +1,206 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer.test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.fabricmc.installer.util.FileDownloader;
+import net.fabricmc.installer.util.Utils;
+
+public class FileDownloaderTests {
+	private static final String URL = "https://maven.example.com/com/example/lib/1.0/lib-1.0.jar";
+
+	private final byte[] data = new byte[300000];
+	private final String sha1;
+	private final FakeHttpTransport transport = new FakeHttpTransport();
+	private Path dir;
+	private Path target;
+
+	public FileDownloaderTests() {
+		new Random(42).nextBytes(data);
+		sha1 = Utils.bytesToHex(Utils.sha1(data));
+		transport.serve(URL, data);
+	}
+
+	@Before
+	public void setup() throws IOException {
+		dir = TestFiles.createTempDir();
+		target = dir.resolve("lib-1.0.jar");
+		Utils.setHttpTransport(transport);
+	}
+
+	@After
+	public void cleanup() throws IOException {
+		Utils.setHttpTransport(null);
+		FileDownloader.setSegments(4);
+		FileDownloader.setSegmentThreshold(8 * 1024 * 1024);
+		FileDownloader.setMinSpeed(10 * 1024);
+		FileDownloader.setStallWindow(15);
+		TestFiles.delete(dir);
+	}
+
+	@Test
+	public void testDownload() throws IOException {
+		Assert.assertEquals(sha1, FileDownloader.download(new URL(URL), target, data.length, sha1, null));
+		Assert.assertArrayEquals(data, Files.readAllBytes(target));
+		Assert.assertFalse(Files.exists(dir.resolve("lib-1.0.jar.tmp")));
+		Assert.assertFalse(Files.exists(dir.resolve("lib-1.0.jar.tmp.part")));
+	}
+
+	@Test
+	public void testUnknownSize() throws IOException {
+		Assert.assertEquals(sha1, FileDownloader.download(new URL(URL), target, -1, null, null));
+		Assert.assertArrayEquals(data, Files.readAllBytes(target));
+	}
+
+	@Test
+	public void testResume() throws IOException {
+		transport.failNextAfter(100000);
+
+		try {
+			FileDownloader.download(new URL(URL), target, data.length, sha1, null);
+			Assert.fail("the interrupted download succeeded");
+		} catch (IOException e) {
+			// expected
+		}
+
+		Assert.assertFalse(Files.exists(target));
+		Assert.assertTrue(Files.exists(dir.resolve("lib-1.0.jar.tmp")));
+		Assert.assertTrue(Files.exists(dir.resolve("lib-1.0.jar.tmp.part")));
+
+		Assert.assertEquals(sha1, FileDownloader.download(new URL(URL), target, data.length, sha1, null));
+		Assert.assertEquals("bytes=100000-299999", transport.ranges.get(transport.ranges.size() - 1));
+		Assert.assertArrayEquals(data, Files.readAllBytes(target));
+		Assert.assertFalse(Files.exists(dir.resolve("lib-1.0.jar.tmp.part")));
+	}
+
+	@Test
+	public void testResumeWithoutRangeSupport() throws IOException {
+		transport.failNextAfter(100000);
+
+		try {
+			FileDownloader.download(new URL(URL), target, data.length, sha1, null);
+			Assert.fail("the interrupted download succeeded");
+		} catch (IOException e) {
+			// expected
+		}
+
+		// the server answers the range request with the whole file, which has to replace the partial one
+		transport.ignoreRanges = true;
+		Assert.assertEquals(sha1, FileDownloader.download(new URL(URL), target, data.length, sha1, null));
+		Assert.assertArrayEquals(data, Files.readAllBytes(target));
+	}
+
+	@Test
+	public void testResumeAfterFailedRange() throws IOException {
+		for (int status : new int[] {404, 416, 503}) {
+			transport.failNextAfter(100000);
+			assertFails();
+			byte[] partial = Files.readAllBytes(dir.resolve("lib-1.0.jar.tmp"));
+			byte[] state = Files.readAllBytes(dir.resolve("lib-1.0.jar.tmp.part"));
+
+			// a mirror without the file or with a temporary error must not throw away what was received
+			transport.failNextWith(status);
+			assertFails();
+			Assert.assertEquals("bytes=100000-299999", transport.ranges.get(transport.ranges.size() - 1));
+			Assert.assertArrayEquals(partial, Files.readAllBytes(dir.resolve("lib-1.0.jar.tmp")));
+			Assert.assertArrayEquals(state, Files.readAllBytes(dir.resolve("lib-1.0.jar.tmp.part")));
+
+			Assert.assertEquals(sha1, FileDownloader.download(new URL(URL), target, data.length, sha1, null));
+			Assert.assertEquals("bytes=100000-299999", transport.ranges.get(transport.ranges.size() - 1));
+			Assert.assertArrayEquals(data, Files.readAllBytes(target));
+			Files.delete(target);
+		}
+	}
+
+	@Test
+	public void testStall() throws IOException {
+		FileDownloader.setMinSpeed(1024);
+		FileDownloader.setStallWindow(1);
+		transport.stallNextAfter(100000);
+
+		long start = System.nanoTime();
+
+		try {
+			FileDownloader.download(new URL(URL), target, data.length, sha1, null);
+			Assert.fail("the stalled download succeeded");
+		} catch (IOException e) {
+			Assert.assertTrue(e.getMessage(), e.getMessage().contains("stalled"));
+		}
+
+		// aborted by the stall watch rather than the fake read timeout
+		Assert.assertTrue(System.nanoTime() - start < 10_000_000_000L);
+
+		// what arrived before the stall is kept for the next attempt
+		Assert.assertEquals(sha1, FileDownloader.download(new URL(URL), target, data.length, sha1, null));
+		Assert.assertEquals("bytes=100000-299999", transport.ranges.get(transport.ranges.size() - 1));
+		Assert.assertArrayEquals(data, Files.readAllBytes(target));
+	}
+
+	@Test
+	public void testChecksumMismatch() throws IOException {
+		String wrongSha1 = Utils.bytesToHex(Utils.sha1(new byte[1]));
+
+		try {
+			FileDownloader.download(new URL(URL), target, data.length, wrongSha1, null);
+			Assert.fail("a download with the wrong checksum succeeded");
+		} catch (IOException e) {
+			// expected
+		}
+
+		Assert.assertFalse(Files.exists(target));
+		Assert.assertFalse(Files.exists(dir.resolve("lib-1.0.jar.tmp")));
+		Assert.assertFalse(Files.exists(dir.resolve("lib-1.0.jar.tmp.part")));
+	}
+
+	@Test
+	public void testSegments() throws IOException {
+		FileDownloader.setSegmentThreshold(0);
+		FileDownloader.setSegments(4);
+
+		Assert.assertEquals(sha1, FileDownloader.download(new URL(URL), target, data.length, sha1, null));
+		Assert.assertArrayEquals(data, Files.readAllBytes(target));
+		Assert.assertEquals(4, new HashSet<>(transport.ranges).size());
+	}
+
+	private void assertFails() throws IOException {
+		try {
+			FileDownloader.download(new URL(URL), target, data.length, sha1, null);
+			Assert.fail("the download succeeded");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer.test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.fabricmc.installer.util.ArtifactCache;
+import net.fabricmc.installer.util.HttpCache;
+import net.fabricmc.installer.util.Utils;
+
+public class HttpCacheTests {
+	private static final String URL = "https://meta.example.com/v2/versions/loader";
+
+	private final FakeHttpTransport transport = new FakeHttpTransport();
+	private Path previousCacheDir;
+	private Path cacheDir;
+
+	@Before
+	public void setup() throws IOException {
+		previousCacheDir = ArtifactCache.getCacheDir();
+		cacheDir = TestFiles.createTempDir();
+		ArtifactCache.setCacheDir(cacheDir);
+		Utils.setHttpTransport(transport);
+	}
+
+	@After
+	public void cleanup() throws IOException {
+		Utils.setHttpTransport(null);
+		ArtifactCache.setCacheDir(previousCacheDir);
+		HttpCache.setMaxAge(0);
+		TestFiles.delete(cacheDir);
+	}
+
+	@Test
+	public void testRevalidate() throws IOException {
+		transport.serve(URL, bytes("first")).etag(URL, "\"1\"");
+		Assert.assertEquals("first", HttpCache.readString(new URL(URL)));
+
+		// the server answers 304 for the stored etag, so the body comes from the cache
+		transport.serve(URL, bytes("changed without a new etag"));
+		Assert.assertEquals("first", HttpCache.readString(new URL(URL)));
+		Assert.assertEquals(2, transport.requests.size());
+
+		transport.serve(URL, bytes("second")).etag(URL, "\"2\"");
+		Assert.assertEquals("second", HttpCache.readString(new URL(URL)));
+	}
+
+	@Test
+	public void testMaxAge() throws IOException {
+		HttpCache.setMaxAge(60);
+		transport.serve(URL, bytes("first")).etag(URL, "\"1\"");
+		Assert.assertEquals("first", HttpCache.readString(new URL(URL)));
+
+		transport.serve(URL, bytes("second")).etag(URL, "\"2\"");
+		Assert.assertEquals("first", HttpCache.readString(new URL(URL)));
+		Assert.assertEquals(1, transport.requests.size());
+	}
+
+	@Test
+	public void testDamagedEntry() throws IOException {
+		transport.serve(URL, bytes("first")).etag(URL, "\"1\"");
+		Assert.assertEquals("first", HttpCache.readString(new URL(URL)));
+
+		for (Path meta : getFiles(".properties")) {
+			Files.write(meta, bytes("etag=\\u12"));
+		}
+
+		// a damaged entry is a miss, fetched again and replaced
+		transport.serve(URL, bytes("second"));
+		Assert.assertEquals("second", HttpCache.readString(new URL(URL)));
+		Assert.assertEquals("second", HttpCache.readString(new URL(URL)));
+		Assert.assertEquals(3, transport.requests.size());
+	}
+
+	@Test
+	public void testMissingBody() throws IOException {
+		transport.serve(URL, bytes("first")).etag(URL, "\"1\"");
+		Assert.assertEquals("first", HttpCache.readString(new URL(URL)));
+
+		for (Path body : getFiles(".body")) {
+			Files.delete(body);
+		}
+
+		// without its body the stored etag must not be sent, a 304 would have nothing to serve
+		transport.serve(URL, bytes("second"));
+		Assert.assertEquals("second", HttpCache.readString(new URL(URL)));
+	}
+
+	private List<Path> getFiles(String suffix) throws IOException {
+		try (Stream<Path> files = Files.list(cacheDir.resolve("http"))) {
+			List<Path> ret = files.filter(file -> file.toString().endsWith(suffix)).collect(Collectors.toList());
+			Assert.assertFalse(ret.isEmpty());
+
+			return ret;
+		}
+	}
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer.test;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.fabricmc.installer.util.InstallBundle;
+
+public class InstallBundleTests {
+	private Path dir;
+
+	@Before
+	public void setup() throws IOException {
+		dir = TestFiles.createTempDir();
+	}
+
+	@After
+	public void cleanup() throws IOException {
+		TestFiles.delete(dir);
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		Path output = dir.resolve("bundle.zip");
+		Path library = dir.resolve("lib-1.0.jar");
+		byte[] libraryData = new byte[100000];
+		libraryData[1234] = 1;
+		Files.write(library, libraryData);
+
+		try (InstallBundle.Writer writer = InstallBundle.create(output, "server", "0.1", "1.20")) {
+			writer.add("meta/v2/versions/loader/1.20/0.1/server/json", "{\"id\":\"profile\"}".getBytes(StandardCharsets.UTF_8));
+			writer.add("libraries/com/example/lib/1.0/lib-1.0.jar", library);
+			writer.finish();
+		}
+
+		try (InstallBundle bundle = InstallBundle.open(output)) {
+			Assert.assertEquals("server", bundle.side);
+			Assert.assertEquals("0.1", bundle.loaderVersion);
+			Assert.assertEquals("1.20", bundle.gameVersion);
+
+			Assert.assertTrue(bundle.has("meta/v2/versions/loader/1.20/0.1/server/json"));
+			Assert.assertFalse(bundle.has("meta/v2/versions/loader/1.20/0.2/server/json"));
+			Assert.assertEquals("{\"id\":\"profile\"}", bundle.readString("meta/v2/versions/loader/1.20/0.1/server/json"));
+
+			Path target = dir.resolve("libraries").resolve("lib-1.0.jar");
+			Assert.assertFalse(bundle.matches("libraries/com/example/lib/1.0/lib-1.0.jar", target));
+			bundle.extract("libraries/com/example/lib/1.0/lib-1.0.jar", target);
+			Assert.assertArrayEquals(libraryData, Files.readAllBytes(target));
+			Assert.assertTrue(bundle.matches("libraries/com/example/lib/1.0/lib-1.0.jar", target));
+
+			Files.write(target, new byte[libraryData.length]);
+			Assert.assertFalse(bundle.matches("libraries/com/example/lib/1.0/lib-1.0.jar", target));
+		}
+	}
+
+	@Test(expected = FileNotFoundException.class)
+	public void testMissingEntry() throws IOException {
+		Path output = dir.resolve("bundle.zip");
+
+		try (InstallBundle.Writer writer = InstallBundle.create(output, "client", "0.1", "1.20")) {
+			writer.finish();
+		}
+
+		try (InstallBundle bundle = InstallBundle.open(output)) {
+			bundle.readString("meta/v2/versions/loader/1.20/0.1/profile/json");
+		}
+	}
+
+	@Test
+	public void testUnfinished() throws IOException {
+		Path output = dir.resolve("bundle.zip");
+
+		try (InstallBundle.Writer writer = InstallBundle.create(output, "client", "0.1", "1.20")) {
+			writer.add("meta/v2/versions/loader/1.20/0.1/profile/json", new byte[10]);
+		}
+
+		// neither the bundle nor its temporary file are left behind
+		try (Stream<Path> files = Files.list(dir)) {
+			Assert.assertEquals(0, files.count());
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testNotABundle() throws IOException {
+		Path output = dir.resolve("bundle.zip");
+
+		try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(output))) {
+			zos.putNextEntry(new ZipEntry("other.txt"));
+		}
+
+		InstallBundle.open(output).close();
+	}
+}
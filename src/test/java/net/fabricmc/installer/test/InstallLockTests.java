@@ -0,0 +1,110 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer.test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import mjson.Json;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.fabricmc.installer.util.InstallLock;
+import net.fabricmc.installer.util.Library;
+import net.fabricmc.installer.util.Utils;
+import net.fabricmc.installer.util.VersionMeta;
+
+public class InstallLockTests {
+	private static final String META_PATH = "v2/versions/loader/1.20/0.1/profile/json";
+
+	private Path dir;
+
+	@Before
+	public void setup() throws IOException {
+		dir = TestFiles.createTempDir();
+	}
+
+	@After
+	public void cleanup() throws IOException {
+		TestFiles.delete(dir);
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		byte[] unhashed = "unhashed library".getBytes(StandardCharsets.UTF_8);
+		Path libsDir = dir.resolve("libraries");
+		Path unhashedFile = libsDir.resolve(new Library(Json.object().set("name", "com.example:unhashed:1.0").set("url", "https://maven.example.com/")).getPath());
+		Files.createDirectories(unhashedFile.getParent());
+		Files.write(unhashedFile, unhashed);
+
+		Json profile = Json.object().set("id", "notebook-loader-0.1-1.20").set("libraries", Json.array()
+				.add(Json.object().set("name", "com.example:hashed:1.0").set("url", "https://maven.example.com/").set("size", 123).set("sha1", "0123456789abcdef0123456789abcdef01234567"))
+				.add(Json.object().set("name", "com.example:unhashed:1.0").set("url", "https://maven.example.com/")));
+
+		InstallLock.Recorder recorder = InstallLock.startRecording();
+		Assert.assertSame(recorder, InstallLock.getRecorder());
+		recorder.recordProfile("server", "0.1", "1.20", META_PATH, profile, libsDir);
+		recorder.recordServer(new VersionMeta.Download(Json.object().set("url", "https://example.com/server.jar").set("size", 456).set("sha1", "76543210fedcba9876543210fedcba9876543210")));
+		InstallLock written = recorder.finish();
+		Assert.assertNull(InstallLock.getRecorder());
+
+		Path file = dir.resolve("notebook.lock.json");
+		written.write(file);
+		InstallLock lock = InstallLock.read(file);
+
+		Assert.assertEquals("server", lock.side);
+		Assert.assertEquals("0.1", lock.loaderVersion);
+		Assert.assertEquals("1.20", lock.gameVersion);
+
+		Json libraries = lock.getProfile(META_PATH).at("libraries");
+		Assert.assertEquals(123, new Library(libraries.at(0)).size);
+		// the size and hash the profile didn't list are taken from the downloaded file
+		Library library = new Library(libraries.at(1));
+		Assert.assertEquals(unhashed.length, library.size);
+		Assert.assertEquals(Utils.bytesToHex(Utils.sha1(unhashed)), library.sha1);
+
+		VersionMeta.Download server = lock.getServerDownload();
+		Assert.assertEquals("https://example.com/server.jar", server.url);
+		Assert.assertEquals(456, server.size);
+	}
+
+	@Test(expected = IOException.class)
+	public void testOtherProfile() throws IOException {
+		InstallLock.Recorder recorder = InstallLock.startRecording();
+		recorder.recordProfile("client", "0.1", "1.20", META_PATH, Json.object().set("libraries", Json.array()), dir);
+		recorder.finish().getProfile("v2/versions/loader/1.20/0.2/profile/json");
+	}
+
+	@Test(expected = IOException.class)
+	public void testNewerFormat() throws IOException {
+		Path file = dir.resolve("notebook.lock.json");
+		Utils.writeToFile(file, Json.object().set("format", 1000).set("side", "client").toString());
+		InstallLock.read(file);
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer.test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.fabricmc.installer.util.JsonReader;
+
+public class JsonReaderTests {
+	@Test
+	public void test() throws IOException {
+		JsonReader reader = new JsonReader(new StringReader("{\"latest\": {\"release\": \"1.20\"}, \"versions\": [{\"id\": \"1.20\", \"size\": 123, \"stable\": true, \"url\": \"https://x/\\u0041\\\"\", \"extra\": null}, {}]}"));
+
+		reader.beginObject();
+		Assert.assertEquals("latest", reader.nextName());
+		reader.skipValue();
+		Assert.assertEquals("versions", reader.nextName());
+		reader.beginArray();
+		reader.beginObject();
+		Assert.assertEquals("id", reader.nextName());
+		Assert.assertEquals("1.20", reader.nextString());
+		Assert.assertEquals("size", reader.nextName());
+		Assert.assertEquals(123, reader.nextLong());
+		Assert.assertEquals("stable", reader.nextName());
+		Assert.assertTrue(reader.nextBoolean());
+		Assert.assertEquals("url", reader.nextName());
+		Assert.assertEquals("https://x/A\"", reader.nextString());
+		Assert.assertEquals("extra", reader.nextName());
+		reader.nextNull();
+		Assert.assertFalse(reader.hasNext());
+		reader.endObject();
+		Assert.assertTrue(reader.hasNext());
+		reader.skipValue();
+		Assert.assertFalse(reader.hasNext());
+		reader.endArray();
+		reader.endObject();
+		Assert.assertEquals(JsonReader.Token.END_DOCUMENT, reader.peek());
+	}
+
+	@Test
+	public void testTopLevelValue() throws IOException {
+		JsonReader reader = new JsonReader(new StringReader(" -1.5e3 "));
+
+		Assert.assertEquals("-1.5e3", reader.nextString());
+		Assert.assertEquals(JsonReader.Token.END_DOCUMENT, reader.peek());
+	}
+
+	@Test(expected = IOException.class)
+	public void testMissingComma() throws IOException {
+		JsonReader reader = new JsonReader(new StringReader("[1 2]"));
+
+		reader.beginArray();
+		reader.nextLong();
+		reader.nextLong();
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncated() throws IOException {
+		JsonReader reader = new JsonReader(new StringReader("{\"versions\": [{\"id\": \"1."));
+
+		reader.beginObject();
+		reader.nextName();
+		reader.skipValue();
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer.test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.fabricmc.installer.util.ArtifactCache;
+import net.fabricmc.installer.util.HttpStatusException;
+import net.fabricmc.installer.util.MissingCache;
+import net.fabricmc.installer.util.NotebookService;
+import net.fabricmc.installer.util.Utils;
+
+public class MissingCacheTests {
+	private final FakeHttpTransport transport = new FakeHttpTransport();
+	private Path previousCacheDir;
+
+	@Before
+	public void setup() {
+		// keep the entries in memory only
+		previousCacheDir = ArtifactCache.getCacheDir();
+		ArtifactCache.setCacheDir(null);
+		Utils.setHttpTransport(transport);
+	}
+
+	@After
+	public void cleanup() {
+		Utils.setHttpTransport(null);
+		ArtifactCache.setCacheDir(previousCacheDir);
+		MissingCache.setTtl(5 * 60);
+	}
+
+	@Test
+	public void testTtl() throws Exception {
+		MissingCache.setTtl(1);
+
+		int requests = queryMissing("v2/versions/ttl");
+		Assert.assertTrue(requests > 0);
+
+		// every service answered 404, so the next query doesn't ask any of them
+		Assert.assertEquals(0, queryMissing("v2/versions/ttl"));
+
+		Thread.sleep(1100);
+		Assert.assertEquals(requests, queryMissing("v2/versions/ttl"));
+	}
+
+	@Test
+	public void testDisabled() throws IOException {
+		MissingCache.setTtl(0);
+
+		int requests = queryMissing("v2/versions/disabled");
+		Assert.assertTrue(requests > 0);
+		Assert.assertEquals(requests, queryMissing("v2/versions/disabled"));
+	}
+
+	/**
+	 * Query a path no service has and get the number of requests that took.
+	 */
+	private int queryMissing(String path) throws IOException {
+		int before = transport.requests.size();
+
+		try {
+			NotebookService.queryMetaJson(path);
+			Assert.fail(path + " was found");
+		} catch (HttpStatusException e) {
+			Assert.assertTrue(e.isNotFound());
+		}
+
+		return transport.requests.size() - before;
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.SwingUtilities;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.fabricmc.installer.util.ProgressAggregator;
+
+public class ProgressAggregatorTests {
+	private final BlockingQueue<String> published = new LinkedBlockingQueue<>();
+	private final AtomicInteger publishes = new AtomicInteger();
+	private final ProgressAggregator aggregator = new ProgressAggregator((text, done, total, bytesPerSecond) -> {
+		publishes.incrementAndGet();
+		published.add(SwingUtilities.isEventDispatchThread() ? text + " " + done + "/" + total : "published off the event dispatch thread");
+	});
+
+	@Test
+	public void testLatestWins() throws InterruptedException {
+		aggregator.updateProgress("a");
+		aggregator.updateProgress("b");
+		aggregator.updateBytes(5, 10);
+
+		Assert.assertEquals("b 5/10", published.poll(5, TimeUnit.SECONDS));
+		Assert.assertNull(published.poll(200, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testCoalesce() throws InterruptedException {
+		int threads = 4;
+		int updates = 20000;
+		List<Thread> workers = new ArrayList<>();
+		long start = System.nanoTime();
+
+		for (int i = 0; i < threads; i++) {
+			Thread thread = new Thread(() -> {
+				for (int j = 1; j <= updates; j++) {
+					aggregator.updateBytes(j, updates);
+				}
+			});
+			thread.start();
+			workers.add(thread);
+		}
+
+		for (Thread thread : workers) {
+			thread.join();
+		}
+
+		aggregator.updateProgress("done");
+
+		// the last state is published, earlier ones may have been merged into it
+		String last;
+
+		do {
+			last = published.poll(5, TimeUnit.SECONDS);
+			Assert.assertNotNull(last);
+		} while (!last.equals("done " + updates + "/" + updates));
+
+		Assert.assertNull(published.poll(200, TimeUnit.MILLISECONDS));
+
+		// at most one publish per 50 ms frame, far fewer than the updates
+		long frames = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) / 50 + 2;
+		Assert.assertTrue(publishes.get() + " publishes", publishes.get() <= frames);
+	}
+
+	@Test
+	public void testReset() throws InterruptedException {
+		aggregator.updateProgress("a");
+		aggregator.updateBytes(5, 10);
+		aggregator.reset();
+
+		Assert.assertEquals("null 0/0", published.poll(5, TimeUnit.SECONDS));
+	}
+}
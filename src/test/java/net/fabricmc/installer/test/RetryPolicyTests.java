@@ -0,0 +1,108 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer.test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.file.AccessDeniedException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.fabricmc.installer.util.HttpStatusException;
+import net.fabricmc.installer.util.InstallerProgress;
+import net.fabricmc.installer.util.RetryPolicy;
+
+public class RetryPolicyTests {
+	private int attempts;
+
+	@Before
+	public void setup() {
+		RetryPolicy.setMaxAttempts(4);
+		RetryPolicy.setBackoff(0, 0);
+	}
+
+	@After
+	public void cleanup() {
+		RetryPolicy.setBackoff(500, 15000);
+	}
+
+	@Test
+	public void testRetryable() throws IOException {
+		Assert.assertEquals(3, failTimes(2, new SocketTimeoutException("read timed out")));
+		Assert.assertEquals(3, failTimes(2, new HttpStatusException("service unavailable", 503)));
+		Assert.assertEquals(3, failTimes(2, new IOException("connection reset")));
+	}
+
+	@Test
+	public void testPermanent() {
+		Assert.assertEquals(1, failTimes(2, new HttpStatusException("not found", 404)));
+		Assert.assertEquals(1, failTimes(2, new AccessDeniedException("libraries")));
+		Assert.assertEquals(1, failTimes(2, new InterruptedIOException("interrupted")));
+	}
+
+	@Test
+	public void testSuppressed() {
+		// one service asking to come back later outweighs the others not having the file
+		IOException e = new HttpStatusException("not found", 404);
+		e.addSuppressed(new HttpStatusException("too many requests", 429));
+		Assert.assertEquals(3, failTimes(2, e));
+
+		// a service without the file outweighs plain connection errors of the others
+		e = new IOException("connection reset");
+		e.addSuppressed(new HttpStatusException("gone", 410));
+		Assert.assertEquals(1, failTimes(2, e));
+	}
+
+	@Test
+	public void testMaxAttempts() {
+		Assert.assertEquals(4, failTimes(10, new SocketTimeoutException("read timed out")));
+
+		RetryPolicy.setMaxAttempts(1);
+		Assert.assertEquals(1, failTimes(10, new SocketTimeoutException("read timed out")));
+	}
+
+	/**
+	 * Run an action that fails the given number of times with e and get how often it ran.
+	 */
+	private int failTimes(int failures, IOException e) {
+		attempts = 0;
+
+		try {
+			RetryPolicy.run("test", InstallerProgress.CONSOLE, () -> {
+				if (++attempts <= failures) throw e;
+
+				return null;
+			});
+		} catch (IOException e2) {
+			Assert.assertSame(e, e2);
+		}
+
+		return attempts;
+	}
+}
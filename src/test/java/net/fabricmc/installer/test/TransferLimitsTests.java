@@ -0,0 +1,84 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer.test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.fabricmc.installer.util.TransferLimits;
+import net.fabricmc.installer.util.Utils;
+
+public class TransferLimitsTests {
+	private static final String URL = "https://maven.example.com/com/example/lib/1.0/lib-1.0.jar";
+
+	private final FakeHttpTransport transport = new FakeHttpTransport().serve(URL, new byte[1500000]);
+
+	@Before
+	public void setup() {
+		Utils.setHttpTransport(transport);
+	}
+
+	@After
+	public void cleanup() {
+		Utils.setHttpTransport(null);
+		TransferLimits.setMaxBandwidth(0);
+	}
+
+	@Test
+	public void testBandwidth() throws IOException {
+		TransferLimits.setMaxBandwidth(1000000);
+
+		// the first second's worth of bytes comes as a burst, the rest at the limit
+		long start = System.nanoTime();
+		Assert.assertEquals(1500000, read());
+		long elapsedMs = (System.nanoTime() - start) / 1000000;
+		Assert.assertTrue("took " + elapsedMs + " ms", elapsedMs >= 400 && elapsedMs < 5000);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegative() {
+		TransferLimits.setMaxBandwidth(-1);
+	}
+
+	private long read() throws IOException {
+		return Utils.read(new URL(URL), (InputStream is) -> {
+			byte[] buffer = new byte[16 * 1024];
+			long ret = 0;
+			int len;
+
+			while ((len = is.read(buffer)) >= 0) {
+				ret += len;
+			}
+
+			return ret;
+		});
+	}
+}
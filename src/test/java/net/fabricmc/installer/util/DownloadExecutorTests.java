@@ -0,0 +1,107 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer.util;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DownloadExecutorTests {
+	private final Map<String, Integer> hostConnections = new HashMap<>();
+	private Path previousCacheDir;
+
+	@Before
+	public void setup() {
+		// keep the mirror health in memory only
+		previousCacheDir = ArtifactCache.getCacheDir();
+		ArtifactCache.setCacheDir(null);
+	}
+
+	@After
+	public void cleanup() {
+		ArtifactCache.setCacheDir(previousCacheDir);
+	}
+
+	@Test
+	public void testStripeByThroughput() {
+		NotebookService slow = createMirror(1024 * 1024);
+		NotebookService fast = createMirror(4 * 1024 * 1024);
+		List<NotebookService> mirrors = Arrays.asList(slow, fast);
+		Map<NotebookService, Integer> picks = new HashMap<>();
+
+		for (int i = 0; i < 10; i++) {
+			picks.merge(pick(mirrors, 100), 1, Integer::sum);
+		}
+
+		// the running downloads are shared in proportion to the throughput
+		Assert.assertEquals(8, (int) picks.get(fast));
+		Assert.assertEquals(2, (int) picks.get(slow));
+	}
+
+	@Test
+	public void testConnectionCap() {
+		NotebookService benched = createMirror(16 * 1024 * 1024);
+		NotebookService healthy = createMirror(1024 * 1024);
+		List<NotebookService> mirrors = Arrays.asList(benched, healthy);
+
+		MirrorHealth.recordFailure(benched);
+		MirrorHealth.recordFailure(benched);
+
+		// benched mirrors only get downloads once the others are at their connection cap
+		Assert.assertSame(healthy, pick(mirrors, 2));
+		Assert.assertSame(healthy, pick(mirrors, 2));
+		Assert.assertSame(benched, pick(mirrors, 2));
+		Assert.assertSame(benched, pick(mirrors, 2));
+		Assert.assertNull(pick(mirrors, 2));
+	}
+
+	/**
+	 * Pick a mirror and count the download as running on it, like the dispatch loop does.
+	 */
+	private NotebookService pick(List<NotebookService> mirrors, int maxPerHost) {
+		NotebookService ret = DownloadExecutor.pickMirror(mirrors, hostConnections, maxPerHost);
+		if (ret != null) hostConnections.merge(URI.create(ret.getMavenUrl()).getHost(), 1, Integer::sum);
+
+		return ret;
+	}
+
+	private static NotebookService createMirror(long bytesPerSecond) {
+		// unique hosts, the state of other tests' services must not interfere
+		String url = "https://" + UUID.randomUUID() + ".example.com/";
+		NotebookService ret = new NotebookService(url, url);
+		MirrorHealth.recordThroughput(ret, bytesPerSecond, 1000000000L);
+
+		return ret;
+	}
+}
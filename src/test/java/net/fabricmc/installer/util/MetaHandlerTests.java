@@ -0,0 +1,148 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MetaHandlerTests {
+	private final String path = "v2/versions/game-" + UUID.randomUUID();
+	private final AtomicReference<String> served = new AtomicReference<>();
+	private final AtomicInteger requests = new AtomicInteger();
+	private volatile CountDownLatch gate; // holds back responses while set
+	private Path previousCacheDir;
+	private Path cacheDir;
+
+	@Before
+	public void setup() throws IOException {
+		previousCacheDir = ArtifactCache.getCacheDir();
+
+		// load the mirror state without a cache directory, so it isn't stored into one at exit
+		ArtifactCache.setCacheDir(null);
+		MirrorHealth.rank(Reference.FABRIC_SERVICES);
+		MissingCache.getStatus(Reference.FABRIC_SERVICES[0], path);
+
+		cacheDir = Files.createTempDirectory("notebook-installer-test");
+		ArtifactCache.setCacheDir(cacheDir);
+		Utils.setHttpTransport((url, headers) -> {
+			if (!url.toString().endsWith(path)) return new StaticResponse(404, "");
+
+			requests.incrementAndGet();
+			CountDownLatch gate = this.gate;
+
+			try {
+				if (gate != null) gate.await();
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			}
+
+			return new StaticResponse(200, served.get());
+		});
+	}
+
+	@After
+	public void cleanup() throws IOException {
+		Utils.setHttpTransport(null);
+		ArtifactCache.setCacheDir(previousCacheDir);
+		MetaHandler.setMaxStaleness(24 * 60 * 60);
+
+		try (Stream<Path> files = Files.walk(cacheDir)) {
+			// children before their directories
+			for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+				Files.delete(file);
+			}
+		}
+	}
+
+	@Test
+	public void testSnapshot() throws Exception {
+		served.set(versions("1.20"));
+		Assert.assertEquals("1.20", load(new MetaHandler(path)));
+
+		// the snapshot completes the handler before the refresh got the new list
+		served.set(versions("1.21"));
+		gate = new CountDownLatch(1);
+		MetaHandler handler = new MetaHandler(path);
+		CountDownLatch refreshed = new CountDownLatch(1);
+		handler.onRefreshSwing(versions -> refreshed.countDown());
+		Assert.assertEquals("1.20", load(handler));
+
+		gate.countDown();
+		Assert.assertTrue(refreshed.await(10, TimeUnit.SECONDS));
+		Assert.assertEquals("1.21", handler.getLatestVersion(false).getVersion());
+		Assert.assertEquals(2, requests.get());
+	}
+
+	@Test
+	public void testStaleSnapshot() throws Exception {
+		MetaHandler.setMaxStaleness(1);
+		served.set(versions("1.20"));
+		Assert.assertEquals("1.20", load(new MetaHandler(path)));
+
+		// past the staleness bound loading waits for the network
+		Thread.sleep(1100);
+		served.set(versions("1.21"));
+		Assert.assertEquals("1.21", load(new MetaHandler(path)));
+		Assert.assertEquals(2, requests.get());
+	}
+
+	@Test
+	public void testDisabled() throws Exception {
+		MetaHandler.setMaxStaleness(0);
+		served.set(versions("1.20"));
+		load(new MetaHandler(path));
+
+		served.set(versions("1.21"));
+		Assert.assertEquals("1.21", load(new MetaHandler(path)));
+	}
+
+	/**
+	 * Load handler and get the latest stable version it completed with.
+	 */
+	private static String load(MetaHandler handler) throws IOException {
+		handler.load();
+
+		return handler.getLatestVersion(false).getVersion();
+	}
+
+	private static String versions(String stable) {
+		return "[{\"version\": \"" + stable + "-snapshot\", \"stable\": false}, {\"version\": \"" + stable + "\", \"stable\": true}]";
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer.util;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MirrorHealthTests {
+	private Path previousCacheDir;
+
+	@Before
+	public void setup() {
+		// keep the state in memory only
+		previousCacheDir = ArtifactCache.getCacheDir();
+		ArtifactCache.setCacheDir(null);
+	}
+
+	@After
+	public void cleanup() {
+		ArtifactCache.setCacheDir(previousCacheDir);
+	}
+
+	@Test
+	public void testRankByLatency() {
+		NotebookService slow = createService();
+		NotebookService fast = createService();
+		NotebookService unknown = createService();
+
+		MirrorHealth.recordSuccess(slow, 3000);
+		MirrorHealth.recordSuccess(fast, 100);
+
+		// services without samples rank by the prior latency, between the measured ones
+		Assert.assertEquals(Arrays.asList(fast, unknown, slow), MirrorHealth.rank(new NotebookService[] { slow, unknown, fast }));
+	}
+
+	@Test
+	public void testRankByErrors() {
+		NotebookService failing = createService();
+		NotebookService healthy = createService();
+
+		MirrorHealth.recordSuccess(failing, 100);
+		MirrorHealth.recordSuccess(healthy, 150);
+		MirrorHealth.recordFailure(failing);
+
+		Assert.assertEquals(Arrays.asList(healthy, failing), MirrorHealth.rank(new NotebookService[] { failing, healthy }));
+	}
+
+	@Test
+	public void testBench() {
+		NotebookService benched = createService();
+		NotebookService slow = createService();
+
+		MirrorHealth.recordSuccess(benched, 10);
+		MirrorHealth.recordSuccess(slow, 5000);
+
+		// a single failure isn't enough
+		MirrorHealth.recordFailure(benched);
+		Assert.assertTrue(MirrorHealth.getDownloadWeight(benched) > 0);
+
+		MirrorHealth.recordFailure(benched);
+		Assert.assertEquals(0, MirrorHealth.getDownloadWeight(benched), 0);
+		Assert.assertEquals(Arrays.asList(slow, benched), MirrorHealth.rank(new NotebookService[] { benched, slow }));
+
+		// answering again lifts the bench
+		MirrorHealth.recordSuccess(benched, 10);
+		Assert.assertTrue(MirrorHealth.getDownloadWeight(benched) > 0);
+		Assert.assertEquals(Arrays.asList(benched, slow), MirrorHealth.rank(new NotebookService[] { benched, slow }));
+	}
+
+	@Test
+	public void testLatencyPercentile() {
+		NotebookService service = createService();
+
+		for (int i = 1; i <= 10; i++) {
+			MirrorHealth.recordSuccess(service, i * 100);
+		}
+
+		Assert.assertEquals(900, MirrorHealth.getLatencyPercentile(service, 90));
+		Assert.assertEquals(1000, MirrorHealth.getLatencyPercentile(service, 100));
+	}
+
+	private static NotebookService createService() {
+		// unique urls, the state of other tests' services must not interfere
+		String url = "https://" + UUID.randomUUID() + ".example.com/";
+
+		return new NotebookService(url, url);
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import mjson.Json;
+
+public class NotebookServiceTests {
+	private Path previousCacheDir;
+
+	@Before
+	public void setup() {
+		previousCacheDir = ArtifactCache.getCacheDir();
+		ArtifactCache.setCacheDir(null);
+	}
+
+	@After
+	public void cleanup() {
+		Utils.setHttpTransport(null);
+		ArtifactCache.setCacheDir(previousCacheDir);
+		NotebookService.setHedgePercentile(-1);
+	}
+
+	@Test
+	public void testHedging() throws Exception {
+		String path = "v2/versions/hedged-" + UUID.randomUUID();
+		List<NotebookService> ranked = MirrorHealth.rank(Reference.FABRIC_SERVICES);
+		String stalled = ranked.get(0).getMetaUrl() + path;
+		String answered = ranked.get(1).getMetaUrl() + path;
+		CountDownLatch aborted = new CountDownLatch(1);
+
+		Utils.setHttpTransport(new HttpTransport() {
+			@Override
+			public Response get(URL url, Map<String, String> headers) {
+				if (url.toString().equals(stalled)) return new StalledResponse(aborted);
+
+				return new StaticResponse(url.toString().equals(answered) ? 200 : 404, "{\"answered\":true}");
+			}
+		});
+		NotebookService.setHedgePercentile(50);
+
+		Json json = NotebookService.queryMetaJson(path);
+		Assert.assertTrue(json.at("answered").asBoolean());
+
+		// the stalled request must not keep its connection once the hedge won
+		Assert.assertTrue(aborted.await(10, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Never sends its body, like a server that stopped responding. Reads ignore interrupts like socket reads.
+	 */
+	private static final class StalledResponse implements HttpTransport.Response {
+		private final CountDownLatch aborted;
+
+		StalledResponse(CountDownLatch aborted) {
+			this.aborted = aborted;
+		}
+
+		@Override
+		public int getStatus() {
+			return 200;
+		}
+
+		@Override
+		public String getHeader(String name) {
+			return null;
+		}
+
+		@Override
+		public InputStream getBody() {
+			return new InputStream() {
+				@Override
+				public int read() throws IOException {
+					long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+
+					while (aborted.getCount() > 0) {
+						if (System.nanoTime() > deadline) throw new IOException("read timed out");
+
+						try {
+							aborted.await(100, TimeUnit.MILLISECONDS);
+						} catch (InterruptedException e) {
+							// like a blocked socket read
+						}
+					}
+
+					throw new IOException("aborted");
+				}
+			};
+		}
+
+		@Override
+		public void abort() {
+			aborted.countDown();
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SingleFlightTests {
+	private static final int WAITERS = 3;
+
+	private final SingleFlight<String, String> flight = new SingleFlight<>();
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+	private final CountDownLatch release = new CountDownLatch(1);
+	private final AtomicInteger fetches = new AtomicInteger();
+
+	@After
+	public void cleanup() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testShared() throws Exception {
+		List<Future<String>> results = start(() -> "result");
+
+		for (Future<String> result : results) {
+			Assert.assertEquals("result", result.get(10, TimeUnit.SECONDS));
+		}
+
+		Assert.assertEquals(1, fetches.get());
+
+		// nothing is kept once the fetch completed
+		Assert.assertEquals("again", flight.get("key", () -> "again"));
+	}
+
+	@Test
+	public void testExceptionCopies() throws Exception {
+		HttpStatusException original = new HttpStatusException("not found", 404);
+		List<Future<String>> results = start(() -> {
+			throw original;
+		});
+		List<IOException> exceptions = new ArrayList<>();
+
+		for (Future<String> result : results) {
+			try {
+				result.get(10, TimeUnit.SECONDS);
+				Assert.fail("the fetch succeeded");
+			} catch (ExecutionException e) {
+				exceptions.add((IOException) e.getCause());
+			}
+		}
+
+		Assert.assertEquals(1, fetches.get());
+		Assert.assertSame(original, exceptions.get(0));
+
+		for (IOException e : exceptions) {
+			// each caller gets its own exception of the same type, so suppressing into one can't leak into the others
+			Assert.assertTrue(e instanceof HttpStatusException);
+			Assert.assertEquals(404, ((HttpStatusException) e).status);
+			e.addSuppressed(new IOException("added by " + e));
+		}
+
+		for (IOException e : exceptions) {
+			Assert.assertEquals(1, e.getSuppressed().length);
+		}
+	}
+
+	/**
+	 * Start a fetch, let more callers join it while it runs, then let it complete with result.
+	 */
+	private List<Future<String>> start(RetryPolicy.Action<String> result) throws InterruptedException {
+		List<Future<String>> ret = new ArrayList<>();
+		ret.add(executor.submit(() -> flight.get("key", () -> {
+			fetches.incrementAndGet();
+
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			}
+
+			return result.run();
+		})));
+
+		while (fetches.get() == 0) Thread.sleep(10);
+
+		for (int i = 0; i < WAITERS; i++) {
+			ret.add(executor.submit(() -> flight.get("key", () -> {
+				fetches.incrementAndGet();
+				return "not shared";
+			})));
+		}
+
+		// give the waiters time to join the running fetch
+		Thread.sleep(200);
+		release.countDown();
+
+		return ret;
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2023, 2024 BookkeepersMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.installer.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StateFileTests {
+	private Path previousCacheDir;
+	private Path cacheDir;
+
+	@Before
+	public void setup() throws IOException {
+		previousCacheDir = ArtifactCache.getCacheDir();
+		cacheDir = Files.createTempDirectory("notebook-installer-test");
+		ArtifactCache.setCacheDir(cacheDir);
+	}
+
+	@After
+	public void cleanup() throws IOException {
+		ArtifactCache.setCacheDir(previousCacheDir);
+
+		try (Stream<Path> files = Files.walk(cacheDir)) {
+			// children before their directories
+			for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+				Files.delete(file);
+			}
+		}
+	}
+
+	@Test
+	public void testMerge() {
+		StateFile file = new StateFile("test.properties", "test state");
+		Assert.assertTrue(file.read().isEmpty());
+
+		// two processes storing what they learned one after the other
+		file.update(properties -> properties.setProperty("a", "1"));
+		file.update(properties -> properties.setProperty("b", "2"));
+
+		Properties properties = file.read();
+		Assert.assertEquals("1", properties.getProperty("a"));
+		Assert.assertEquals("2", properties.getProperty("b"));
+	}
+
+	@Test
+	public void testDamaged() throws IOException {
+		StateFile file = new StateFile("test.properties", "test state");
+		Files.write(file.getPath(), "a=\\u12".getBytes());
+
+		Assert.assertTrue(file.read().isEmpty());
+
+		// the damaged content is replaced on the next update
+		file.update(properties -> properties.setProperty("b", "2"));
+		Assert.assertEquals("2", file.read().getProperty("b"));
+	}
+
+	@Test
+	public void testDisabled() {
+		ArtifactCache.setCacheDir(null);
+
+		StateFile file = new StateFile("test.properties", "test state");
+		Assert.assertNull(file.getPath());
+		file.update(properties -> Assert.fail("updated without a cache directory"));
+		Assert.assertTrue(file.read().isEmpty());
+	}
+}